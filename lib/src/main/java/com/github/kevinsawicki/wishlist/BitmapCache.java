@@ -0,0 +1,325 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import android.graphics.Bitmap;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Least recently used cache of decoded bitmaps bounded by the total byte count
+ * of the bitmaps it contains
+ */
+public class BitmapCache implements MemoryTrimmer.Trimmable {
+
+  private static class CachedBitmap {
+
+    public final Bitmap bitmap;
+
+    public final int byteCount;
+
+    private CachedBitmap(final Bitmap bitmap) {
+      this.bitmap = bitmap;
+      byteCount = DecodeBitmapTask.getByteCount(bitmap);
+    }
+  }
+
+  /**
+   * Mode of bitmaps scaled to exactly fit within the maximum size
+   */
+  public static final int MODE_EXACT = 1;
+
+  /**
+   * Mode of bitmaps scaled to an exact size using a {@link BoxScaler}
+   */
+  public static final int MODE_BOX_FILTER = 1 << 1;
+
+  /**
+   * Mode of bitmaps decoded using RGB_565 when opaque
+   */
+  public static final int MODE_RGB_565 = 1 << 2;
+
+  private static BitmapCache defaultCache;
+
+  /**
+   * Get default cache shared by all {@link ImageViewBitmapTask} instances
+   * <p>
+   * The default cache is sized to one eighth of the maximum heap size and
+   * evicts bitmaps into the {@link BitmapPool#getDefault()} pool
+   *
+   * @return cache
+   */
+  public static synchronized BitmapCache getDefault() {
+    if (defaultCache == null)
+      defaultCache = new BitmapCache((int) Math.min(Integer.MAX_VALUE, Runtime
+          .getRuntime().maxMemory() / 8)).setPool(BitmapPool.getDefault());
+    return defaultCache;
+  }
+
+  /**
+   * Get key for bitmap decoded from path to maximum width and height
+   *
+   * @param path
+   * @param maxWidth
+   * @param maxHeight
+   * @return key
+   */
+  public static String getKey(final String path, final int maxWidth,
+      final int maxHeight) {
+    return path + '@' + maxWidth + 'x' + maxHeight;
+  }
+
+  /**
+   * Get key for bitmap decoded from path to maximum width and height in the
+   * given mode
+   * <p>
+   * Keys of bitmaps decoded with no mode flags set are the same as the keys
+   * returned by {@link #getKey(String, int, int)}
+   *
+   * @param path
+   * @param maxWidth
+   * @param maxHeight
+   * @param mode
+   *          combination of {@link #MODE_EXACT}, {@link #MODE_BOX_FILTER}, and
+   *          {@link #MODE_RGB_565}
+   * @return key
+   */
+  public static String getKey(final String path, final int maxWidth,
+      final int maxHeight, final int mode) {
+    String key = getKey(path, maxWidth, maxHeight);
+    return mode != 0 ? key + '/' + mode : key;
+  }
+
+  private final LinkedHashMap<String, CachedBitmap> bitmaps = new LinkedHashMap<String, CachedBitmap>(
+      16, 0.75F, true);
+
+  private final int maxSize;
+
+  private int size;
+
+  private BitmapPool pool;
+
+  private int hits;
+
+  private int misses;
+
+  /**
+   * Create cache holding at most the given number of bytes
+   *
+   * @param maxSize
+   */
+  public BitmapCache(final int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Set pool that evicted bitmaps are put into
+   *
+   * @param pool
+   * @return this cache
+   */
+  public synchronized BitmapCache setPool(final BitmapPool pool) {
+    this.pool = pool;
+    return this;
+  }
+
+  /**
+   * Get bitmap for key
+   * <p>
+   * The returned bitmap is retained in the pool of this cache until
+   * {@link #release(Bitmap)} is called so that it is not decoded into if
+   * evicted before it is displayed
+   *
+   * @param key
+   * @return bitmap or null if not cached
+   */
+  public synchronized Bitmap get(final String key) {
+    CachedBitmap cached = bitmaps.get(key);
+    if (cached != null && cached.bitmap.isRecycled()) {
+      bitmaps.remove(key);
+      size -= cached.byteCount;
+      cached = null;
+    }
+    if (cached == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    if (pool != null)
+      pool.retain(cached.bitmap);
+    return cached.bitmap;
+  }
+
+  /**
+   * Retain bitmap in the pool of this cache until {@link #release(Bitmap)} is
+   * called so that it is not decoded into if evicted before it is displayed
+   *
+   * @param bitmap
+   * @return bitmap
+   */
+  public synchronized Bitmap retain(final Bitmap bitmap) {
+    if (pool != null)
+      pool.retain(bitmap);
+    return bitmap;
+  }
+
+  /**
+   * Release bitmap returned by {@link #get(String)} or passed to
+   * {@link #retain(Bitmap)}
+   * <p>
+   * Bitmaps that are displayed should be retained by the pool before they are
+   * released from this cache
+   *
+   * @param bitmap
+   * @return this cache
+   */
+  public synchronized BitmapCache release(final Bitmap bitmap) {
+    if (pool != null)
+      pool.release(bitmap);
+    return this;
+  }
+
+  /**
+   * Put bitmap in cache
+   * <p>
+   * Bitmaps larger than the maximum size of this cache are not stored
+   *
+   * @param key
+   * @param bitmap
+   * @return this cache
+   */
+  public BitmapCache put(final String key, final Bitmap bitmap) {
+    CachedBitmap cached = new CachedBitmap(bitmap);
+    synchronized (this) {
+      if (cached.byteCount > maxSize)
+        return this;
+
+      CachedBitmap previous = bitmaps.put(key, cached);
+      size += cached.byteCount;
+      if (previous != null)
+        size -= previous.byteCount;
+      trim(maxSize, true);
+    }
+    return this;
+  }
+
+  /**
+   * Remove bitmap for key
+   *
+   * @param key
+   * @return removed bitmap or null if not cached
+   */
+  public synchronized Bitmap remove(final String key) {
+    CachedBitmap removed = bitmaps.remove(key);
+    if (removed == null)
+      return null;
+
+    size -= removed.byteCount;
+    return removed.bitmap;
+  }
+
+  /**
+   * Remove least recently used bitmaps until the total byte count is at or
+   * below the given size
+   *
+   * @param size
+   * @return this cache
+   */
+  public synchronized BitmapCache trimToSize(final int size) {
+    trim(size, true);
+    return this;
+  }
+
+  /**
+   * Remove least recently used bitmaps until the total byte count is at or
+   * below the given fraction of the maximum size
+   * <p>
+   * Bitmaps removed are not put into the pool so that the memory they use is
+   * freed once they are no longer displayed
+   *
+   * @param fraction
+   *          between 0 and 1, 0 to remove all bitmaps
+   */
+  public synchronized void trimToFraction(final float fraction) {
+    trim((int) (maxSize * fraction), false);
+  }
+
+  /**
+   * Remove all bitmaps from cache
+   *
+   * @return this cache
+   */
+  public synchronized BitmapCache clear() {
+    trim(0, true);
+    return this;
+  }
+
+  /**
+   * Remove least recently used bitmaps until the total byte count is at or
+   * below the given size
+   *
+   * @param targetSize
+   * @param pooled
+   *          true to put removed bitmaps into the pool, false otherwise
+   */
+  private void trim(final int targetSize, final boolean pooled) {
+    Iterator<CachedBitmap> entries = bitmaps.values().iterator();
+    while (size > targetSize && entries.hasNext()) {
+      CachedBitmap eldest = entries.next();
+      entries.remove();
+      size -= eldest.byteCount;
+      if (pooled && pool != null)
+        pool.put(eldest.bitmap);
+    }
+  }
+
+  /**
+   * Get total byte count of all cached bitmaps
+   *
+   * @return size in bytes
+   */
+  public synchronized int getSize() {
+    return size;
+  }
+
+  /**
+   * Get maximum byte count of all cached bitmaps
+   *
+   * @return maximum size in bytes
+   */
+  public synchronized int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Get number of calls to {@link #get(String)} that returned a bitmap
+   *
+   * @return hit count
+   */
+  public synchronized int getHitCount() {
+    return hits;
+  }
+
+  /**
+   * Get number of calls to {@link #get(String)} that returned null
+   *
+   * @return miss count
+   */
+  public synchronized int getMissCount() {
+    return misses;
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static android.graphics.Bitmap.Config.ARGB_8888;
+import static android.graphics.Bitmap.Config.RGB_565;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapFactory.Options;
+
+/**
+ * Decoder of {@link Bitmap} instances using {@link BitmapFactory}
+ * <p>
+ * Reusing bitmaps requires API level 11 or above and reusing bitmaps when
+ * sampling or scaling requires API level 19 or above
+ */
+public class BitmapFactoryDecoder implements ImageDecoder<Bitmap> {
+
+  /**
+   * Temporary decoding storage for each worker thread so concurrent decodes do
+   * not contend for a single buffer
+   */
+  private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>() {
+
+    @Override
+    protected byte[] initialValue() {
+      return new byte[16 * 1024];
+    }
+  };
+
+  private static BitmapFactoryDecoder defaultDecoder;
+
+  /**
+   * Get temporary decoding storage of the current thread
+   * <p>
+   * The same buffer is returned for every decode on a thread
+   *
+   * @return buffer
+   */
+  static byte[] getTempStorage() {
+    return BUFFER.get();
+  }
+
+  /**
+   * Get default decoder used by new {@link DecodeBitmapTask} instances
+   *
+   * @return decoder
+   */
+  public static synchronized BitmapFactoryDecoder getDefault() {
+    if (defaultDecoder == null)
+      defaultDecoder = new BitmapFactoryDecoder();
+    return defaultDecoder;
+  }
+
+  private static void setCanceller(final DecodeOptions<Bitmap> decodeOptions,
+      final Options options) {
+    decodeOptions.setCanceller(new Runnable() {
+
+      public void run() {
+        options.requestCancelDecode();
+      }
+    });
+  }
+
+  public void decodeBounds(final BitmapSource source,
+      final DecodeOptions<Bitmap> decodeOptions) {
+    Options options = new Options();
+    options.inJustDecodeBounds = true;
+    setCanceller(decodeOptions, options);
+    try {
+      source.decode(options);
+    } finally {
+      decodeOptions.setCanceller(null);
+    }
+    decodeOptions.outWidth = options.outWidth;
+    decodeOptions.outHeight = options.outHeight;
+    decodeOptions.outMimeType = options.outMimeType;
+  }
+
+  public Bitmap decode(final BitmapSource source,
+      final DecodeOptions<Bitmap> decodeOptions) {
+    final int sampleSize = decodeOptions.sampleSize;
+    Options options = new Options();
+    options.inSampleSize = sampleSize;
+    options.inPreferredConfig = decodeOptions.preferRgb565 ? RGB_565
+        : ARGB_8888;
+    options.inPurgeable = true;
+    options.inTempStorage = getTempStorage();
+    if (decodeOptions.scaledWidth > 0) {
+      // Density scaling is applied by the decoder after sampling
+      options.inScaled = true;
+      options.inDensity = SampleSize.getSampled(decodeOptions.outWidth,
+          sampleSize);
+      options.inTargetDensity = decodeOptions.scaledWidth;
+    }
+    if (BitmapPool.isSupported()) {
+      options.inMutable = decodeOptions.mutable;
+      options.inBitmap = decodeOptions.reuse;
+    }
+
+    Bitmap decoded;
+    setCanceller(decodeOptions, options);
+    try {
+      decoded = source.decode(options);
+    } catch (IllegalArgumentException e) {
+      if (options.inBitmap == null)
+        throw e;
+      // Reused bitmap was not compatible with the decoded image
+      options.inBitmap = null;
+      decoded = source.decode(options);
+    } finally {
+      decodeOptions.setCanceller(null);
+    }
+    if (decoded == null || decodeOptions.scaledWidth <= 0)
+      return decoded;
+
+    return scale(decoded, decodeOptions);
+  }
+
+  /**
+   * Scale bitmap to the requested width when the decoder did not apply the
+   * density scaling, such as byte array decodes before API level 19, and
+   * clear the density that scaling sets so that the bitmap is drawn at its
+   * pixel size
+   *
+   * @param decoded
+   * @param decodeOptions
+   * @return bitmap at the requested width
+   */
+  private static Bitmap scale(final Bitmap decoded,
+      final DecodeOptions<Bitmap> decodeOptions) {
+    final int width = decodeOptions.scaledWidth;
+    Bitmap scaled = decoded;
+    if (decoded.getWidth() > width) {
+      int height = Math.max(1,
+          Math.round((float) decoded.getHeight() * width / decoded.getWidth()));
+      scaled = Bitmap.createScaledBitmap(decoded, width, height, true);
+      // Reused bitmaps are returned to their pool by the caller
+      if (scaled != decoded && decoded != decodeOptions.reuse)
+        decoded.recycle();
+    }
+    scaled.setDensity(Bitmap.DENSITY_NONE);
+    return scaled;
+  }
+}
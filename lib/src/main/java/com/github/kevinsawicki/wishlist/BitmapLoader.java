@@ -0,0 +1,796 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static android.graphics.Bitmap.Config.ARGB_8888;
+import static android.graphics.Bitmap.Config.RGB_565;
+import static android.os.Build.VERSION.SDK_INT;
+import static android.util.Log.DEBUG;
+import static com.github.kevinsawicki.wishlist.DecodeMetrics.CACHE_DIMENSIONS;
+import static com.github.kevinsawicki.wishlist.DecodeMetrics.CACHE_MEMORY;
+import static com.github.kevinsawicki.wishlist.DecodeMetrics.CACHE_POOL;
+import static com.github.kevinsawicki.wishlist.DecodeMetrics.CACHE_THUMBNAIL;
+import static com.github.kevinsawicki.wishlist.DecodeMetrics.STAGE_BOUNDS;
+import static com.github.kevinsawicki.wishlist.DecodeMetrics.STAGE_DECODE;
+import static com.github.kevinsawicki.wishlist.DecodeMetrics.STAGE_THUMBNAIL;
+import static com.github.kevinsawicki.wishlist.DecodeMetrics.STAGE_TRANSFORM;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.util.Log;
+
+import com.github.kevinsawicki.wishlist.DecodeMetrics.Listener;
+import com.github.kevinsawicki.wishlist.DimensionIndex.Dimensions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loader of a bitmap from a file path or other {@link BitmapSource} through
+ * the memory cache, thumbnail cache, decoder, and transformations on the
+ * calling thread
+ * <p>
+ * Sources that cannot be decoded are left in place, {@link DecodeBitmapTask}
+ * runs a loader on a background thread and deletes them instead.
+ */
+public class BitmapLoader {
+
+  private static final String TAG = "BitmapLoader";
+
+  /**
+   * Largest target size that embedded EXIF thumbnails are looked up for
+   */
+  private static final int EXIF_THUMBNAIL_MAX_SIZE = 512;
+
+  /**
+   * Maximum width of decoded bitmap
+   */
+  protected final int maxWidth;
+
+  /**
+   * Maximum height of decoded bitmap
+   */
+  protected final int maxHeight;
+
+  /**
+   * Path to decoded bitmap from, null when decoding from a source that was not
+   * created from a path
+   */
+  protected final String path;
+
+  /**
+   * Source to decode bitmap from
+   */
+  protected final BitmapSource source;
+
+  /**
+   * Cache of decoded bitmaps, null if caching is disabled
+   */
+  protected BitmapCache cache;
+
+  /**
+   * Disk cache of downsampled bitmaps, null if disabled
+   */
+  protected ThumbnailCache thumbnails;
+
+  /**
+   * Pool of bitmaps to decode into, null if disabled
+   */
+  protected BitmapPool pool;
+
+  /**
+   * Index of image dimensions, null if bounds are always decoded
+   */
+  protected DimensionIndex dimensions;
+
+  /**
+   * Whether bitmaps are scaled to exactly fit within the maximum size
+   */
+  protected boolean exactSize;
+
+  /**
+   * Whether exact sizes are reached using a {@link BoxScaler} after decoding
+   * instead of scaling while decoding
+   */
+  protected boolean boxFilter;
+
+  /**
+   * Number of dominant colors stored in the dimension index when decoding,
+   * 0 to not compute colors
+   */
+  protected int paletteSize;
+
+  /**
+   * Whether opaque images are decoded using {@link Config#RGB_565}
+   */
+  protected boolean allowRgb565;
+
+  /**
+   * Whether thumbnails embedded in the EXIF header of JPEG images are decoded
+   * when large enough for the maximum size
+   */
+  protected boolean useExifThumbnail = true;
+
+  /**
+   * Transformations applied in order to decoded bitmaps, null if none
+   */
+  protected List<BitmapTransformation> transformations;
+
+  /**
+   * Decoder of the source
+   */
+  protected ImageDecoder<Bitmap> decoder = BitmapFactoryDecoder.getDefault();
+
+  /**
+   * Options of the decode in progress
+   */
+  private volatile DecodeOptions<Bitmap> decoding;
+
+  /**
+   * Whether this loader was cancelled
+   */
+  private volatile boolean cancelled;
+
+  /**
+   * Whether the memory cache lookup for this loader's bitmap was already
+   * reported to {@link DecodeMetrics}, such as by a bind before its task was
+   * executed
+   */
+  volatile boolean lookupRecorded;
+
+  /**
+   * Create loader of the bitmap at the specified path to the specified maximum
+   * width and height
+   *
+   * @param maxWidth
+   * @param maxHeight
+   * @param path
+   */
+  public BitmapLoader(final int maxWidth, final int maxHeight,
+      final String path) {
+    this(maxWidth, maxHeight, path, BitmapSource.fromFile(path));
+  }
+
+  /**
+   * Create loader of the bitmap from the specified source to the specified
+   * maximum width and height
+   *
+   * @param maxWidth
+   * @param maxHeight
+   * @param source
+   */
+  public BitmapLoader(final int maxWidth, final int maxHeight,
+      final BitmapSource source) {
+    this(maxWidth, maxHeight, null, source);
+  }
+
+  BitmapLoader(final int maxWidth, final int maxHeight, final String path,
+      final BitmapSource source) {
+    this.maxWidth = maxWidth;
+    this.maxHeight = maxHeight;
+    this.path = path;
+    this.source = source;
+  }
+
+
+  /**
+   * Set cache to check before decoding and to store decoded bitmaps in
+   *
+   * @param cache
+   * @return this loader
+   */
+  public BitmapLoader setCache(final BitmapCache cache) {
+    this.cache = cache;
+    return this;
+  }
+
+  /**
+   * Set disk cache to check before decoding the original file and to store
+   * downsampled bitmaps in
+   *
+   * @param thumbnails
+   * @return this loader
+   */
+  public BitmapLoader setThumbnailCache(final ThumbnailCache thumbnails) {
+    this.thumbnails = thumbnails;
+    return this;
+  }
+
+  /**
+   * Set pool of bitmaps to reuse when decoding
+   *
+   * @param pool
+   * @return this loader
+   */
+  public BitmapLoader setPool(final BitmapPool pool) {
+    this.pool = pool;
+    return this;
+  }
+
+  /**
+   * Set index to read image dimensions from instead of decoding bounds and to
+   * store decoded bounds in
+   *
+   * @param dimensions
+   * @return this loader
+   */
+  public BitmapLoader setDimensionIndex(final DimensionIndex dimensions) {
+    this.dimensions = dimensions;
+    return this;
+  }
+
+  /**
+   * Set whether bitmaps are scaled to exactly fit within the maximum width and
+   * height
+   * <p>
+   * Exact sizing samples by the largest power of two that keeps the image at
+   * or above the target size and then scales it down to the target size while
+   * decoding. The default rounded sample size may decode bitmaps larger than
+   * the maximum size.
+   *
+   * @param exactSize
+   * @return this loader
+   */
+  public BitmapLoader setExactSize(final boolean exactSize) {
+    this.exactSize = exactSize;
+    return this;
+  }
+
+  /**
+   * Set whether exact sizes are reached by area averaging the sampled bitmap
+   * with a {@link BoxScaler} on the decoding thread
+   * <p>
+   * Area averaging does not alias when scaling down by up to twice the
+   * target size, unlike the filtering applied while decoding, at the cost of
+   * a second bitmap that is taken from the pool when possible
+   *
+   * @param boxFilter
+   * @return this loader
+   */
+  public BitmapLoader setBoxFilter(final boolean boxFilter) {
+    this.boxFilter = boxFilter;
+    return this;
+  }
+
+  /**
+   * Set number of dominant colors computed from decoded bitmaps and stored in
+   * the dimension index for images that have none indexed
+   * <p>
+   * Colors are computed from a sample of the decoded pixels so no additional
+   * decode is needed
+   *
+   * @param paletteSize
+   *          number of colors, 0 to not compute colors which is the default
+   * @return this loader
+   * @see Palette#getPlaceholder(DimensionIndex, String, int)
+   */
+  public BitmapLoader setPaletteSize(final int paletteSize) {
+    this.paletteSize = paletteSize;
+    return this;
+  }
+
+  /**
+   * Set whether images that the header shows are opaque are decoded using
+   * {@link Config#RGB_565}, halving the memory used compared to the
+   * {@link Config#ARGB_8888} config that is used otherwise
+   *
+   * @param allowRgb565
+   * @return this loader
+   */
+  public BitmapLoader setAllowRgb565(final boolean allowRgb565) {
+    this.allowRgb565 = allowRgb565;
+    return this;
+  }
+
+  /**
+   * Set whether the thumbnail embedded in the EXIF header of a JPEG image is
+   * decoded instead of the full image when it is at least as large as the
+   * size the image is decoded to
+   * <p>
+   * This is enabled by default and only reads the header of the image instead
+   * of the entire file
+   *
+   * @param useExifThumbnail
+   * @return this loader
+   */
+  public BitmapLoader setUseExifThumbnail(final boolean useExifThumbnail) {
+    this.useExifThumbnail = useExifThumbnail;
+    return this;
+  }
+
+  /**
+   * Add transformation applied to decoded bitmaps after all previously added
+   * transformations
+   * <p>
+   * Transformations run on the decoding thread and the transformed bitmap is
+   * cached under a key that includes the keys of all transformations
+   *
+   * @param transformation
+   * @return this loader
+   */
+  public BitmapLoader addTransformation(
+      final BitmapTransformation transformation) {
+    if (transformations == null)
+      transformations = new ArrayList<BitmapTransformation>();
+    transformations.add(transformation);
+    return this;
+  }
+
+  /**
+   * Apply all transformations in order to the given bitmap
+   * <p>
+   * Intermediate bitmaps are put in the pool once transformed
+   *
+   * @param bitmap
+   * @return transformed bitmap or null if cancelled before all transformations
+   *         were applied
+   */
+  protected Bitmap transform(final Bitmap bitmap) {
+    if (transformations == null)
+      return bitmap;
+
+    final Listener metrics = DecodeMetrics.getListener();
+    final long start = metrics != null ? System.nanoTime() : 0;
+    Bitmap transformed = bitmap;
+    for (BitmapTransformation transformation : transformations) {
+      // Partially transformed bitmaps must not be cached
+      if (isCancelled()) {
+        if (pool != null)
+          pool.put(transformed);
+        return null;
+      }
+      Bitmap next = transformation.transform(transformed);
+      if (next != transformed && pool != null)
+        pool.put(transformed);
+      transformed = next;
+    }
+    if (metrics != null)
+      metrics.onStage(STAGE_TRANSFORM, System.nanoTime() - start);
+    return transformed;
+  }
+
+  /**
+   * Set decoder of the source
+   *
+   * @param decoder
+   * @return this loader
+   */
+  public BitmapLoader setDecoder(final ImageDecoder<Bitmap> decoder) {
+    this.decoder = decoder;
+    return this;
+  }
+
+  /**
+   * Should the source be decoded using {@link Config#RGB_565}?
+   *
+   * @param options
+   *          options holding the decoded bounds
+   * @return true if allowed and the source is opaque, false otherwise
+   */
+  protected boolean isRgb565(final DecodeOptions<Bitmap> options) {
+    if (!allowRgb565)
+      return false;
+    return "image/jpeg".equals(options.outMimeType) || source.isOpaque();
+  }
+
+  /**
+   * Cancel this loader without interrupting it
+   * <p>
+   * A loader that is running stops after the current decoding pass
+   */
+  public void cancel() {
+    cancelled = true;
+    DecodeOptions<Bitmap> options = decoding;
+    if (options != null)
+      options.requestCancel();
+  }
+
+  /**
+   * Was this loader cancelled?
+   *
+   * @return true if cancelled, false otherwise
+   */
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Get mode of bitmaps decoded with the given settings
+   *
+   * @param exactSize
+   * @param boxFilter
+   * @param allowRgb565
+   * @return combination of {@link BitmapCache#MODE_EXACT},
+   *         {@link BitmapCache#MODE_BOX_FILTER}, and
+   *         {@link BitmapCache#MODE_RGB_565}
+   */
+  static int getMode(final boolean exactSize, final boolean boxFilter,
+      final boolean allowRgb565) {
+    int mode = 0;
+    if (exactSize) {
+      mode |= BitmapCache.MODE_EXACT;
+      if (boxFilter)
+        mode |= BitmapCache.MODE_BOX_FILTER;
+    }
+    if (allowRgb565)
+      mode |= BitmapCache.MODE_RGB_565;
+    return mode;
+  }
+
+  /**
+   * Get cache key of the bitmap of the given source decoded to the given size
+   * and mode and then transformed by the given transformations
+   *
+   * @param source
+   * @param maxWidth
+   * @param maxHeight
+   * @param mode
+   * @param transformations
+   * @return key or null if the source is not cacheable
+   */
+  static String getCacheKey(final BitmapSource source, final int maxWidth,
+      final int maxHeight, final int mode,
+      final List<BitmapTransformation> transformations) {
+    String key = source.getKey();
+    if (key == null)
+      return null;
+
+    key = BitmapCache.getKey(key, maxWidth, maxHeight, mode);
+    if (transformations != null)
+      for (BitmapTransformation transformation : transformations)
+        key += '|' + transformation.getKey();
+    return key;
+  }
+
+  /**
+   * Get mode this loader decodes bitmaps in
+   *
+   * @return combination of {@link BitmapCache#MODE_EXACT},
+   *         {@link BitmapCache#MODE_BOX_FILTER}, and
+   *         {@link BitmapCache#MODE_RGB_565}
+   */
+  protected int getMode() {
+    return getMode(exactSize, boxFilter, allowRgb565);
+  }
+
+  /**
+   * Get key of this loader's bitmap in the cache
+   *
+   * @return key or null if the source is not cacheable
+   */
+  protected String getCacheKey() {
+    return getCacheKey(source, maxWidth, maxHeight, getMode(), transformations);
+  }
+
+  /**
+   * Called when the source could not be decoded
+   * <p>
+   * Sources are left in place by default
+   *
+   * @param source
+   */
+  protected void onUndecodable(final BitmapSource source) {
+    // Sources are never deleted by default
+  }
+
+  /**
+   * Get the thumbnail embedded in the EXIF header of the source if it can be
+   * decoded to the target size of the image with the given bounds
+   * <p>
+   * The bounds are updated to the size of the thumbnail when one is returned
+   *
+   * @param bounds
+   * @param maxWidth
+   * @param maxHeight
+   * @return thumbnail source or null if not available or too small
+   */
+  protected BitmapSource getExifThumbnail(final DecodeOptions<Bitmap> bounds,
+      final int maxWidth, final int maxHeight) {
+    final int width = bounds.outWidth;
+    final int height = bounds.outHeight;
+    int targetWidth = SampleSize.getTargetWidth(width, height, maxWidth,
+        maxHeight);
+    int targetHeight = SampleSize.getTargetHeight(width, height, maxWidth,
+        maxHeight);
+    if (targetWidth > EXIF_THUMBNAIL_MAX_SIZE
+        || targetHeight > EXIF_THUMBNAIL_MAX_SIZE)
+      return null;
+    if (bounds.outMimeType != null && !"image/jpeg".equals(bounds.outMimeType))
+      return null;
+
+    byte[] data = null;
+    InputStream stream = null;
+    try {
+      stream = source.open();
+      data = ImageHeader.getExifThumbnail(stream);
+    } catch (IOException e) {
+      return null;
+    } finally {
+      if (stream != null)
+        try {
+          stream.close();
+        } catch (IOException ignored) {
+          // Ignored
+        }
+    }
+    if (data == null)
+      return null;
+
+    BitmapSource thumbnail = BitmapSource.fromBytes(null, data, 0,
+        data.length);
+    DecodeOptions<Bitmap> options = new DecodeOptions<Bitmap>();
+    decoder.decodeBounds(thumbnail, options);
+    int thumbnailWidth = options.outWidth;
+    int thumbnailHeight = options.outHeight;
+    if (thumbnailWidth < targetWidth || thumbnailHeight < targetHeight)
+      return null;
+
+    // Thumbnails padded to a different aspect ratio would show borders
+    float ratio = (float) width / height;
+    float thumbnailRatio = (float) thumbnailWidth / thumbnailHeight;
+    if (Math.abs(thumbnailRatio - ratio) > ratio * 0.02F)
+      return null;
+
+    bounds.outWidth = thumbnailWidth;
+    bounds.outHeight = thumbnailHeight;
+    return thumbnail;
+  }
+
+  /**
+   * Decode {@link Bitmap} from source
+   *
+   * @return bitmap
+   */
+  protected Bitmap decode() {
+    return decode(maxWidth, maxHeight);
+  }
+
+  /**
+   * Decode {@link Bitmap} from source to the given maximum size
+   * <p>
+   * Only bitmaps decoded to this loader's maximum size are stored in the
+   * thumbnail cache
+   *
+   * @param maxWidth
+   * @param maxHeight
+   * @return bitmap or null if undecodable or cancelled
+   */
+  protected Bitmap decode(final int maxWidth, final int maxHeight) {
+    final DecodeOptions<Bitmap> options = new DecodeOptions<Bitmap>();
+    decoding = options;
+
+    final String key = source.getKey();
+    final Listener metrics = DecodeMetrics.getListener();
+    Dimensions known = null;
+    if (dimensions != null && key != null) {
+      known = dimensions.get(key, source.lastModified());
+      if (metrics != null)
+        metrics.onLookup(CACHE_DIMENSIONS, known != null);
+    }
+    if (known != null) {
+      options.outWidth = known.width;
+      options.outHeight = known.height;
+    } else {
+      long start = metrics != null ? System.nanoTime() : 0;
+      decoder.decodeBounds(source, options);
+      if (metrics != null)
+        metrics.onStage(STAGE_BOUNDS, System.nanoTime() - start);
+      if (isCancelled())
+        return null;
+
+      if (options.outWidth <= 0 || options.outHeight <= 0) {
+        Log.d(TAG, "Decoding bounds of " + key + " failed");
+        onUndecodable(source);
+        return null;
+      }
+
+      if (dimensions != null && key != null) {
+        known = new Dimensions(options.outWidth, options.outHeight,
+            source.lastModified());
+        dimensions.put(key, known);
+      }
+    }
+
+    BitmapSource decodeSource = source;
+    if (useExifThumbnail) {
+      BitmapSource thumbnail = getExifThumbnail(options, maxWidth, maxHeight);
+      if (thumbnail != null)
+        decodeSource = thumbnail;
+      if (isCancelled())
+        return null;
+    }
+
+    final int width = options.outWidth;
+    final int height = options.outHeight;
+    int scale;
+    int targetWidth;
+    int targetHeight;
+    int decodeWidth;
+    int decodeHeight;
+    boolean scaled = false;
+    boolean boxScaled = false;
+    if (exactSize) {
+      scale = SampleSize.getPowerOfTwo(width, height, maxWidth, maxHeight);
+      targetWidth = SampleSize.getTargetWidth(width, height, maxWidth,
+          maxHeight);
+      targetHeight = SampleSize.getTargetHeight(width, height, maxWidth,
+          maxHeight);
+      decodeWidth = SampleSize.getSampled(width, scale);
+      decodeHeight = SampleSize.getSampled(height, scale);
+      if (decodeWidth > targetWidth)
+        if (boxFilter)
+          boxScaled = true;
+        else {
+          options.scaledWidth = targetWidth;
+          scaled = true;
+          decodeWidth = targetWidth;
+          decodeHeight = targetHeight;
+        }
+    } else {
+      scale = SampleSize.getRounded(width, height, maxWidth, maxHeight);
+      targetWidth = SampleSize.getSampled(width, scale);
+      targetHeight = SampleSize.getSampled(height, scale);
+      decodeWidth = targetWidth;
+      decodeHeight = targetHeight;
+    }
+
+    options.preferRgb565 = isRgb565(options);
+    options.sampleSize = scale;
+    final Config config = options.preferRgb565 ? RGB_565 : ARGB_8888;
+
+    Bitmap reused = null;
+    if (pool != null && BitmapPool.isSupported()) {
+      options.mutable = true;
+      // Reusing a bitmap when sampling or scaling requires API level 19
+      if ((scale == 1 && !scaled) || SDK_INT >= 19) {
+        reused = pool.get(decodeWidth, decodeHeight, config);
+        if (metrics != null)
+          metrics.onLookup(CACHE_POOL, reused != null);
+      }
+      options.reuse = reused;
+    }
+
+    long start = metrics != null ? System.nanoTime() : 0;
+    Bitmap decoded = decoder.decode(decodeSource, options);
+    if (metrics != null)
+      metrics.onStage(STAGE_DECODE, System.nanoTime() - start);
+    if (reused != null && decoded != reused)
+      pool.put(reused);
+    // Bitmaps not yet scaled to the target size must not be cached
+    if (isCancelled()) {
+      if (decoded != null && pool != null)
+        pool.put(decoded);
+      return null;
+    }
+
+    if (decoded != null && metrics != null)
+      metrics.onDecoded(key, scale, decodeSource.length(),
+          DecodeBitmapTask.getByteCount(decoded));
+
+    // Sampled bitmaps may be rounded below the target size by the decoder
+    if (decoded != null && boxScaled && decoded.getWidth() >= targetWidth
+        && decoded.getHeight() >= targetHeight) {
+      Bitmap boxed = BoxScaler.scale(decoded, targetWidth, targetHeight, pool);
+      if (boxed != decoded && pool != null)
+        pool.put(decoded);
+      decoded = boxed;
+    }
+
+    if (decoded != null && paletteSize > 0 && known != null
+        && known.colors == null)
+      dimensions.put(key, new Dimensions(known.width, known.height,
+          known.modified, Palette.getDominant(decoded, paletteSize)));
+
+    if (decoded != null && (scale > 1 || scaled || boxScaled)
+        && thumbnails != null
+        && maxWidth == this.maxWidth && maxHeight == this.maxHeight)
+      thumbnails.put(source, maxWidth, maxHeight, getMode(), decoded);
+
+    if (Log.isLoggable(TAG, DEBUG)) {
+      if (decoded == null) {
+        Log.d(TAG, "Decoding " + key + " failed");
+        if (decodeSource == source)
+          onUndecodable(source);
+      } else
+        Log.d(TAG,
+            "Decoded to " + decoded.getWidth() + "x" + decoded.getHeight()
+                + " from max size: " + maxWidth + "x" + maxHeight
+                + " using scale:" + scale + ", config: " + config
+                + (decodeSource != source ? ", EXIF thumbnail" : "")
+                + " and byte count:"
+                + DecodeBitmapTask.getByteCount(decoded));
+    }
+
+    return decoded;
+  }
+
+  /**
+   * Does the given path exist?
+   *
+   * @param path
+   * @return true if exists and non-empty, false otherwise
+   */
+  protected boolean pathExists(final String path) {
+    File file = new File(path);
+    return file.exists() && file.length() > 0;
+  }
+
+  /**
+   * Load bitmap
+   * <p>
+   * Bitmaps of sources with a key that are loaded while a cache is set are
+   * retained by the cache and must be released using
+   * {@link BitmapCache#release(Bitmap)} once displayed or no longer needed
+   *
+   * @return bitmap
+   */
+  protected Bitmap load() {
+    final String key = getCacheKey();
+    final BitmapCache cache = key != null ? this.cache : null;
+    final Listener metrics = DecodeMetrics.getListener();
+    if (cache != null) {
+      Bitmap cached = cache.get(key);
+      if (metrics != null && !lookupRecorded)
+        metrics.onLookup(CACHE_MEMORY, cached != null);
+      if (cached != null)
+        return cached;
+    }
+
+    if (path != null ? !pathExists(path) : !source.exists())
+      return null;
+
+    Bitmap decoded = null;
+    if (thumbnails != null) {
+      long start = metrics != null ? System.nanoTime() : 0;
+      decoded = thumbnails.get(source, maxWidth, maxHeight, getMode(), pool);
+      if (metrics != null) {
+        metrics.onLookup(CACHE_THUMBNAIL, decoded != null);
+        if (decoded != null)
+          metrics.onStage(STAGE_THUMBNAIL, System.nanoTime() - start);
+      }
+    }
+    if (decoded == null)
+      decoded = decode();
+    if (decoded != null)
+      decoded = transform(decoded);
+    if (decoded != null && cache != null) {
+      // Evicting the bitmap must not make it reusable before it is displayed
+      cache.retain(decoded);
+      cache.put(key, decoded);
+    }
+    return decoded;
+  }
+
+  /**
+   * Get path being decoded
+   *
+   * @return path or null if not decoding from a path
+   */
+  public String getPath() {
+    return path;
+  }
+
+  /**
+   * Get source being decoded
+   *
+   * @return source
+   */
+  public BitmapSource getSource() {
+    return source;
+  }
+}
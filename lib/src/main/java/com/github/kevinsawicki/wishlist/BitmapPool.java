@@ -0,0 +1,283 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static android.os.Build.VERSION.SDK_INT;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Pool of mutable bitmaps, bucketed by size and config, that can be decoded
+ * into using {@link android.graphics.BitmapFactory.Options#inBitmap}
+ * <p>
+ * Bitmaps are tracked while displayed using {@link #retain(Bitmap)} and
+ * {@link #release(Bitmap)} and a bitmap put in the pool while still displayed
+ * is only made available once it has been released.
+ * <p>
+ * Pooling requires API level 11 or above, on earlier versions the pool is
+ * always empty.
+ */
+public class BitmapPool implements MemoryTrimmer.Trimmable {
+
+  private static BitmapPool defaultPool;
+
+  /**
+   * Get default pool shared by all {@link ImageViewBitmapTask} instances
+   * <p>
+   * The default pool is sized to one sixteenth of the maximum heap size
+   *
+   * @return pool
+   */
+  public static synchronized BitmapPool getDefault() {
+    if (defaultPool == null)
+      defaultPool = new BitmapPool((int) Math.min(Integer.MAX_VALUE, Runtime
+          .getRuntime().maxMemory() / 16));
+    return defaultPool;
+  }
+
+  /**
+   * Is bitmap reuse supported on this device?
+   *
+   * @return true if supported, false otherwise
+   */
+  public static boolean isSupported() {
+    return SDK_INT >= 11;
+  }
+
+  private static String getKey(final int width, final int height,
+      final Config config) {
+    return width + "x" + height + ':' + config;
+  }
+
+  private final Map<String, LinkedList<Bitmap>> buckets = new HashMap<String, LinkedList<Bitmap>>();
+
+  private final LinkedList<Bitmap> available = new LinkedList<Bitmap>();
+
+  private final Map<Bitmap, Integer> retained = new WeakHashMap<Bitmap, Integer>();
+
+  private final Map<Bitmap, Boolean> pending = new WeakHashMap<Bitmap, Boolean>();
+
+  private final int maxSize;
+
+  private int size;
+
+  private int hits;
+
+  private int misses;
+
+  /**
+   * Create pool holding at most the given number of bytes
+   *
+   * @param maxSize
+   */
+  public BitmapPool(final int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Get bitmap from pool that matches the given size and config
+   * <p>
+   * The returned bitmap is removed from the pool
+   *
+   * @param width
+   * @param height
+   * @param config
+   * @return bitmap or null if none available
+   */
+  public synchronized Bitmap get(final int width, final int height,
+      final Config config) {
+    LinkedList<Bitmap> bucket = buckets.get(getKey(width, height, config));
+    if (bucket == null || bucket.isEmpty()) {
+      misses++;
+      return null;
+    }
+
+    Bitmap bitmap = bucket.removeLast();
+    available.remove(bitmap);
+    size -= DecodeBitmapTask.getByteCount(bitmap);
+    hits++;
+    return bitmap;
+  }
+
+  /**
+   * Put bitmap that is no longer cached into the pool
+   * <p>
+   * Immutable and recycled bitmaps are ignored, bitmaps still retained are
+   * added to the pool once fully released.
+   *
+   * @param bitmap
+   * @return this pool
+   */
+  public synchronized BitmapPool put(final Bitmap bitmap) {
+    if (!isSupported() || !bitmap.isMutable() || bitmap.isRecycled())
+      return this;
+
+    if (retained.containsKey(bitmap)) {
+      pending.put(bitmap, Boolean.TRUE);
+      return this;
+    }
+
+    int byteCount = DecodeBitmapTask.getByteCount(bitmap);
+    if (byteCount > maxSize)
+      return this;
+
+    String key = getKey(bitmap.getWidth(), bitmap.getHeight(),
+        bitmap.getConfig());
+    LinkedList<Bitmap> bucket = buckets.get(key);
+    if (bucket == null) {
+      bucket = new LinkedList<Bitmap>();
+      buckets.put(key, bucket);
+    }
+    bucket.add(bitmap);
+    available.add(bitmap);
+    size += byteCount;
+    trim(maxSize);
+    return this;
+  }
+
+  /**
+   * Mark bitmap as displayed so that it is not reused until released
+   *
+   * @param bitmap
+   * @return bitmap
+   */
+  public synchronized Bitmap retain(final Bitmap bitmap) {
+    Integer count = retained.get(bitmap);
+    if (count != null)
+      retained.put(bitmap, count + 1);
+    else
+      retained.put(bitmap, 1);
+    return bitmap;
+  }
+
+  /**
+   * Mark bitmap as no longer displayed
+   * <p>
+   * The bitmap is added to the pool if it was put while still retained
+   *
+   * @param bitmap
+   * @return this pool
+   */
+  public synchronized BitmapPool release(final Bitmap bitmap) {
+    Integer count = retained.get(bitmap);
+    if (count == null)
+      return this;
+
+    if (count > 1) {
+      retained.put(bitmap, count - 1);
+      return this;
+    }
+
+    retained.remove(bitmap);
+    if (pending.remove(bitmap) != null)
+      put(bitmap);
+    return this;
+  }
+
+  /**
+   * Remove least recently pooled bitmaps until the total byte count is at or
+   * below the given size
+   *
+   * @param targetSize
+   */
+  private void trim(final int targetSize) {
+    Iterator<Bitmap> bitmaps = available.iterator();
+    while (size > targetSize && bitmaps.hasNext()) {
+      Bitmap eldest = bitmaps.next();
+      bitmaps.remove();
+      buckets.get(
+          getKey(eldest.getWidth(), eldest.getHeight(), eldest.getConfig()))
+          .remove(eldest);
+      size -= DecodeBitmapTask.getByteCount(eldest);
+    }
+  }
+
+  /**
+   * Remove least recently pooled bitmaps until the total byte count is at or
+   * below the given size
+   *
+   * @param size
+   * @return this pool
+   */
+  public synchronized BitmapPool trimToSize(final int size) {
+    trim(size);
+    return this;
+  }
+
+  /**
+   * Remove least recently pooled bitmaps until the total byte count is at or
+   * below the given fraction of the maximum size
+   *
+   * @param fraction
+   *          between 0 and 1, 0 to remove all bitmaps
+   */
+  public void trimToFraction(final float fraction) {
+    trimToSize((int) (getMaxSize() * fraction));
+  }
+
+  /**
+   * Remove all bitmaps from pool
+   *
+   * @return this pool
+   */
+  public synchronized BitmapPool clear() {
+    trim(0);
+    return this;
+  }
+
+  /**
+   * Get total byte count of all pooled bitmaps
+   *
+   * @return size in bytes
+   */
+  public synchronized int getSize() {
+    return size;
+  }
+
+  /**
+   * Get maximum byte count of all pooled bitmaps
+   *
+   * @return maximum size in bytes
+   */
+  public synchronized int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Get number of calls to {@link #get(int, int, Config)} that returned a
+   * bitmap
+   *
+   * @return hit count
+   */
+  public synchronized int getHitCount() {
+    return hits;
+  }
+
+  /**
+   * Get number of calls to {@link #get(int, int, Config)} that returned null
+   *
+   * @return miss count
+   */
+  public synchronized int getMissCount() {
+    return misses;
+  }
+}
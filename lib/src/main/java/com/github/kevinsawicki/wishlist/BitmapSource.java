@@ -0,0 +1,639 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapFactory.Options;
+import android.net.Uri;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Source of encoded image data that a {@link DecodeBitmapTask} decodes from
+ * <p>
+ * Every source can be decoded more than once so that the bounds of the image
+ * can be read before the pixels are decoded.
+ */
+public abstract class BitmapSource {
+
+  private static class FileSource extends BitmapSource {
+
+    private final String path;
+
+    private FileSource(final String path) {
+      super(path);
+
+      this.path = path;
+    }
+
+    @Override
+    public Bitmap decode(final Options options) {
+      return BitmapFactory.decodeFile(path, options);
+    }
+
+    @Override
+    public boolean exists() {
+      File file = new File(path);
+      return file.exists() && file.length() > 0;
+    }
+
+    @Override
+    public long lastModified() {
+      return new File(path).lastModified();
+    }
+
+    @Override
+    public long length() {
+      return new File(path).length();
+    }
+
+    @Override
+    protected boolean delete() {
+      return new File(path).delete();
+    }
+
+    @Override
+    public InputStream open() throws IOException {
+      return new FileInputStream(path);
+    }
+  }
+
+  private static class ByteArraySource extends BitmapSource {
+
+    private final byte[] data;
+
+    private final int offset;
+
+    private final int length;
+
+    private ByteArraySource(final String key, final byte[] data,
+        final int offset, final int length) {
+      super(key);
+
+      this.data = data;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    @Override
+    public Bitmap decode(final Options options) {
+      return BitmapFactory.decodeByteArray(data, offset, length, options);
+    }
+
+    @Override
+    public boolean exists() {
+      return length > 0;
+    }
+
+    @Override
+    public long length() {
+      return length;
+    }
+
+    @Override
+    public InputStream open() throws IOException {
+      return new ByteArrayInputStream(data, offset, length);
+    }
+  }
+
+  private static class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    private ByteBufferInputStream(final ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!buffer.hasRemaining())
+        return -1;
+      return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length)
+        throws IOException {
+      if (length == 0)
+        return 0;
+      if (!buffer.hasRemaining())
+        return -1;
+      int read = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, read);
+      return read;
+    }
+
+    @Override
+    public long skip(final long count) throws IOException {
+      int skipped = (int) Math.max(0, Math.min(count, buffer.remaining()));
+      buffer.position(buffer.position() + skipped);
+      return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return buffer.remaining();
+    }
+  }
+
+  private static class ByteBufferSource extends BitmapSource {
+
+    private final ByteBuffer buffer;
+
+    private ByteBufferSource(final String key, final ByteBuffer buffer) {
+      super(key);
+
+      this.buffer = buffer;
+    }
+
+    @Override
+    public Bitmap decode(final Options options) {
+      if (buffer.hasArray())
+        return BitmapFactory.decodeByteArray(buffer.array(),
+            buffer.arrayOffset() + buffer.position(), buffer.remaining(),
+            options);
+      else
+        return BitmapFactory.decodeStream(
+            new ByteBufferInputStream(buffer.duplicate()), null, options);
+    }
+
+    @Override
+    public boolean exists() {
+      return buffer.hasRemaining();
+    }
+
+    @Override
+    public long length() {
+      return buffer.remaining();
+    }
+
+    @Override
+    public InputStream open() throws IOException {
+      return new ByteBufferInputStream(buffer.duplicate());
+    }
+  }
+
+  private static class StreamSource extends BitmapSource {
+
+    private InputStream stream;
+
+    private byte[] data;
+
+    private StreamSource(final String key, final InputStream stream) {
+      super(key);
+
+      this.stream = stream;
+    }
+
+    /**
+     * Read the remainder of the stream and close it the first time it is
+     * called so that every decode reads the same bytes
+     *
+     * @return bytes of the stream
+     * @throws IOException
+     */
+    private synchronized byte[] getData() throws IOException {
+      if (data != null)
+        return data;
+
+      try {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(
+            stream.available(), 16 * 1024));
+        byte[] buffer = new byte[16 * 1024];
+        int read;
+        while ((read = stream.read(buffer)) != -1)
+          output.write(buffer, 0, read);
+        data = output.toByteArray();
+      } finally {
+        try {
+          stream.close();
+        } catch (IOException ignored) {
+          // Ignored
+        }
+        stream = null;
+      }
+      return data;
+    }
+
+    /**
+     * Decode the buffered bytes as a stream since only stream decodes apply
+     * density scaling before API level 19
+     */
+    @Override
+    public Bitmap decode(final Options options) {
+      byte[] data;
+      try {
+        data = getData();
+      } catch (IOException e) {
+        options.outWidth = -1;
+        options.outHeight = -1;
+        return null;
+      }
+      return BitmapFactory.decodeStream(new ByteArrayInputStream(data), null,
+          options);
+    }
+
+    @Override
+    public synchronized long length() {
+      return data != null ? data.length : -1;
+    }
+
+    @Override
+    public InputStream open() throws IOException {
+      return new ByteArrayInputStream(getData());
+    }
+  }
+
+  private static class FileDescriptorSource extends BitmapSource {
+
+    private final FileDescriptor descriptor;
+
+    private FileDescriptorSource(final String key,
+        final FileDescriptor descriptor) {
+      super(key);
+
+      this.descriptor = descriptor;
+    }
+
+    @Override
+    public Bitmap decode(final Options options) {
+      // The offset of the descriptor is restored after each decode
+      return BitmapFactory.decodeFileDescriptor(descriptor, null, options);
+    }
+
+    @Override
+    public boolean exists() {
+      return descriptor.valid();
+    }
+
+    /**
+     * Open a stream sharing the descriptor whose offset is restored when the
+     * returned stream is closed
+     */
+    @Override
+    public InputStream open() throws IOException {
+      final FileInputStream input = new FileInputStream(descriptor);
+      final long position = input.getChannel().position();
+      return new FilterInputStream(input) {
+
+        @Override
+        public void close() throws IOException {
+          input.getChannel().position(position);
+        }
+      };
+    }
+  }
+
+  private static class UrlSource extends BitmapSource {
+
+    private final DownloadCache downloads;
+
+    private UrlSource(final String url, final DownloadCache downloads) {
+      super(url);
+
+      this.downloads = downloads;
+    }
+
+    /**
+     * Decode from the download stream so that bounds are decoded as soon as
+     * the header has been downloaded
+     */
+    @Override
+    public Bitmap decode(final Options options) {
+      InputStream stream = null;
+      try {
+        stream = open();
+        return BitmapFactory.decodeStream(stream, null, options);
+      } catch (IOException e) {
+        options.outWidth = -1;
+        options.outHeight = -1;
+        return null;
+      } finally {
+        if (stream != null)
+          try {
+            stream.close();
+          } catch (IOException ignored) {
+            // Ignored
+          }
+      }
+    }
+
+    @Override
+    public long length() {
+      File file = downloads.get(getKey());
+      return file != null ? file.length() : -1;
+    }
+
+    @Override
+    public boolean prepare(final Runnable ready) {
+      return downloads.prepare(getKey(), ready);
+    }
+
+    @Override
+    protected boolean delete() {
+      return downloads.remove(getKey());
+    }
+
+    @Override
+    public InputStream open() throws IOException {
+      return downloads.open(getKey());
+    }
+  }
+
+  private static class ContentSource extends BitmapSource {
+
+    private final ContentResolver resolver;
+
+    private final Uri uri;
+
+    private ContentSource(final ContentResolver resolver, final Uri uri) {
+      super(uri.toString());
+
+      this.resolver = resolver;
+      this.uri = uri;
+    }
+
+    @Override
+    public Bitmap decode(final Options options) {
+      InputStream stream = null;
+      try {
+        stream = open();
+        return BitmapFactory.decodeStream(stream, null, options);
+      } catch (IOException e) {
+        options.outWidth = -1;
+        options.outHeight = -1;
+        return null;
+      } finally {
+        if (stream != null)
+          try {
+            stream.close();
+          } catch (IOException ignored) {
+            // Ignored
+          }
+      }
+    }
+
+    @Override
+    public InputStream open() throws IOException {
+      InputStream stream = resolver.openInputStream(uri);
+      if (stream == null)
+        throw new FileNotFoundException(uri.toString());
+      return stream;
+    }
+  }
+
+  /**
+   * Create source for file at path
+   *
+   * @param path
+   * @return source keyed by path
+   */
+  public static BitmapSource fromFile(final String path) {
+    return new FileSource(path);
+  }
+
+  /**
+   * Create source for a range of a byte array
+   *
+   * @param key
+   *          used to cache decoded bitmaps, null to disable caching
+   * @param data
+   * @param offset
+   * @param length
+   * @return source
+   */
+  public static BitmapSource fromBytes(final String key, final byte[] data,
+      final int offset, final int length) {
+    return new ByteArraySource(key, data, offset, length);
+  }
+
+  /**
+   * Create source for the remaining bytes of a buffer
+   * <p>
+   * Heap buffers are decoded from their backing array and direct buffers such
+   * as a {@link java.nio.MappedByteBuffer} region are streamed without being
+   * copied into an intermediate array. The position of the buffer is not
+   * changed by decoding.
+   *
+   * @param key
+   *          used to cache decoded bitmaps, null to disable caching
+   * @param buffer
+   * @return source
+   */
+  public static BitmapSource fromBuffer(final String key,
+      final ByteBuffer buffer) {
+    return new ByteBufferSource(key, buffer);
+  }
+
+  /**
+   * Create source for stream
+   * <p>
+   * The stream is read into memory and closed on the first decode so that the
+   * source can be decoded more than once, the encoded bytes are held for as
+   * long as the source is referenced.
+   *
+   * @param key
+   *          used to cache decoded bitmaps, null to disable caching
+   * @param stream
+   * @return source
+   */
+  public static BitmapSource fromStream(final String key,
+      final InputStream stream) {
+    return new StreamSource(key, stream);
+  }
+
+  /**
+   * Create source for file descriptor
+   *
+   * @param key
+   *          used to cache decoded bitmaps, null to disable caching
+   * @param descriptor
+   * @return source
+   */
+  public static BitmapSource fromFileDescriptor(final String key,
+      final FileDescriptor descriptor) {
+    return new FileDescriptorSource(key, descriptor);
+  }
+
+  /**
+   * Create source for http or https URL that is downloaded into the given
+   * cache
+   *
+   * @param url
+   * @param downloads
+   * @return source keyed by URL
+   */
+  public static BitmapSource fromUrl(final String url,
+      final DownloadCache downloads) {
+    return new UrlSource(url, downloads);
+  }
+
+  /**
+   * Create source for URI
+   * <p>
+   * Http and https URIs are downloaded into the
+   * {@link DownloadCache#getDefault(Context)} cache, file paths are decoded
+   * directly, and all other URIs such as content URIs are opened using the
+   * {@link ContentResolver} of the context
+   *
+   * @param context
+   * @param uri
+   * @return source keyed by URI
+   */
+  public static BitmapSource fromUri(final Context context, final Uri uri) {
+    String scheme = uri.getScheme();
+    if ("http".equals(scheme) || "https".equals(scheme))
+      return fromUrl(uri.toString(), DownloadCache.getDefault(context));
+    if (scheme == null || ContentResolver.SCHEME_FILE.equals(scheme))
+      return fromFile(uri.getPath());
+    return new ContentSource(context.getContentResolver(), uri);
+  }
+
+  private final String key;
+
+  /**
+   * Create source
+   *
+   * @param key
+   */
+  protected BitmapSource(final String key) {
+    this.key = key;
+  }
+
+  /**
+   * Get key that identifies the image of this source
+   *
+   * @return key or null if bitmaps decoded from this source are not cached
+   */
+  public String getKey() {
+    return key;
+  }
+
+  /**
+   * Does this source have any data to decode?
+   *
+   * @return true if data is available, false otherwise
+   */
+  public boolean exists() {
+    return true;
+  }
+
+  /**
+   * Get time this source was last modified
+   * <p>
+   * Cached data for this source's key is considered stale when this value
+   * changes
+   *
+   * @return modification time, 0 for sources that never change
+   */
+  public long lastModified() {
+    return 0;
+  }
+
+  /**
+   * Get size of the encoded data of this source
+   *
+   * @return byte count, -1 if unknown
+   */
+  public long length() {
+    return -1;
+  }
+
+  /**
+   * Delete the data of this source after it could not be decoded
+   *
+   * @return true if deleted, false otherwise
+   */
+  protected boolean delete() {
+    return false;
+  }
+
+  /**
+   * Prepare this source so that decoding it does not wait for a connection
+   * <p>
+   * Sources that are not ready start preparing and run the given callback once
+   * they can be read, successfully or not, on another thread. Sources may
+   * report they are ready before all of their data is available, in which case
+   * reads block until the data being read is available.
+   * {@link DecodeExecutor} calls this before running a task so that a decoding
+   * thread is not held while a source is being prepared.
+   *
+   * @param ready
+   * @return true if ready, false if the callback will be run once ready
+   */
+  public boolean prepare(final Runnable ready) {
+    return true;
+  }
+
+  /**
+   * Open a stream to the encoded data of this source
+   * <p>
+   * The returned stream must be closed by the caller
+   *
+   * @return stream
+   * @throws IOException
+   *           if the data could not be opened or this source does not support
+   *           it
+   */
+  public InputStream open() throws IOException {
+    throw new IOException("Opening " + getClass().getName()
+        + " is not supported");
+  }
+
+  /**
+   * Is the image of this source guaranteed to have no transparent pixels?
+   *
+   * @return true if opaque, false if possibly transparent or unknown
+   */
+  public boolean isOpaque() {
+    InputStream stream = null;
+    try {
+      stream = open();
+      return ImageHeader.isOpaque(stream);
+    } catch (IOException e) {
+      return false;
+    } finally {
+      if (stream != null)
+        try {
+          stream.close();
+        } catch (IOException ignored) {
+          // Ignored
+        }
+    }
+  }
+
+  /**
+   * Decode this source using the given options
+   * <p>
+   * Bounds are decoded when {@link Options#inJustDecodeBounds} is true
+   *
+   * @param options
+   * @return bitmap or null if decoding failed or only bounds were decoded
+   */
+  public abstract Bitmap decode(Options options);
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import android.graphics.Bitmap;
+
+/**
+ * Transformation applied to decoded bitmaps on the decoding thread
+ *
+ * @see DecodeBitmapTask#addTransformation(BitmapTransformation)
+ */
+public interface BitmapTransformation {
+
+  /**
+   * Get key identifying this transformation and its parameters
+   * <p>
+   * Bitmaps are cached under a key that includes the keys of all
+   * transformations applied to them
+   *
+   * @return key
+   */
+  String getKey();
+
+  /**
+   * Transform bitmap
+   * <p>
+   * The given bitmap should not be recycled, a transformation that does not
+   * modify the bitmap can return it
+   *
+   * @param bitmap
+   * @return transformed bitmap
+   */
+  Bitmap transform(Bitmap bitmap);
+}
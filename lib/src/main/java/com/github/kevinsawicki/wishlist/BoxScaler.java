@@ -0,0 +1,306 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static android.graphics.Bitmap.Config.ARGB_8888;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+
+/**
+ * Downscaler that averages the area of source pixels covered by each scaled
+ * pixel using integer arithmetic
+ * <p>
+ * Pixels are read and written one row at a time so scaling only needs buffers
+ * the width of the rows, which are kept for each thread and reused. Color
+ * channels are weighted by alpha while averaging so that transparent pixels do
+ * not darken or tint the edges of the opaque pixels next to them.
+ */
+public class BoxScaler {
+
+  private static final int SHIFT = 40;
+
+  private static final ThreadLocal<BoxScaler> SCALERS = new ThreadLocal<BoxScaler>() {
+
+    @Override
+    protected BoxScaler initialValue() {
+      return new BoxScaler();
+    }
+  };
+
+  /**
+   * Scale pixels down to the given size
+   * <p>
+   * The scaled pixels may be written to the same array as the source pixels
+   *
+   * @param pixels
+   *          source pixels in rows of the given width
+   * @param width
+   * @param height
+   * @param scaled
+   *          array to write the scaled pixels to in rows of the scaled width
+   * @param scaledWidth
+   * @param scaledHeight
+   */
+  public static void scale(final int[] pixels, final int width,
+      final int height, final int[] scaled, final int scaledWidth,
+      final int scaledHeight) {
+    BoxScaler scaler = SCALERS.get();
+    scaler.start(width, height, scaledWidth, scaledHeight);
+    int scaledRow = 0;
+    for (int y = 0; y < height; y++)
+      // Rows are written behind the rows still to be read
+      if (scaler.add(pixels, y * width)) {
+        System.arraycopy(scaler.scaledRow, 0, scaled,
+            scaledRow * scaledWidth, scaledWidth);
+        scaledRow++;
+      }
+  }
+
+  /**
+   * Scale bitmap down to the given size into a bitmap from the pool
+   *
+   * @param bitmap
+   * @param width
+   * @param height
+   * @param pool
+   *          pool to get the scaled bitmap from, null to always create a new
+   *          bitmap
+   * @return scaled bitmap, or given bitmap if already at the given size
+   */
+  public static Bitmap scale(final Bitmap bitmap, final int width,
+      final int height, final BitmapPool pool) {
+    final int sourceWidth = bitmap.getWidth();
+    final int sourceHeight = bitmap.getHeight();
+    if (sourceWidth == width && sourceHeight == height)
+      return bitmap;
+
+    BoxScaler scaler = SCALERS.get();
+    scaler.start(sourceWidth, sourceHeight, width, height);
+
+    Config config = bitmap.getConfig() != null ? bitmap.getConfig()
+        : ARGB_8888;
+    Bitmap scaled = null;
+    if (pool != null)
+      scaled = pool.get(width, height, config);
+    if (scaled == null)
+      scaled = Bitmap.createBitmap(width, height, config);
+
+    final int[] row = scaler.sourceRow;
+    int scaledRow = 0;
+    for (int y = 0; y < sourceHeight; y++) {
+      bitmap.getPixels(row, 0, sourceWidth, 0, y, sourceWidth, 1);
+      if (scaler.add(row, 0))
+        scaled.setPixels(scaler.scaledRow, 0, width, 0, scaledRow++, width, 1);
+    }
+    return scaled;
+  }
+
+  private int sourceWidth;
+
+  private int sourceHeight;
+
+  private int width;
+
+  private int height;
+
+  /**
+   * Weight of each source column in the scaled column it starts in, the rest
+   * of its weight is in the next scaled column
+   */
+  private int[] weights = new int[0];
+
+  /**
+   * Whether each source column ends a scaled column
+   */
+  private boolean[] ends = new boolean[0];
+
+  /**
+   * Reciprocal of the source area of a scaled pixel shifted left by
+   * {@link #SHIFT}
+   */
+  private long reciprocal;
+
+  private int[] sourceRow = new int[0];
+
+  /**
+   * Channel sums of the current source row for each scaled column with colors
+   * premultiplied by alpha
+   */
+  private int[] rowSums = new int[0];
+
+  /**
+   * Channel sums of the current scaled row for each scaled column
+   */
+  private long[] sums = new long[0];
+
+  private int[] scaledRow = new int[0];
+
+  /**
+   * Start of the next source row in units of 1 / height source rows
+   */
+  private long position;
+
+  /**
+   * End of the current scaled row in units of 1 / height source rows
+   */
+  private long boundary;
+
+  private void start(final int sourceWidth, final int sourceHeight,
+      final int width, final int height) {
+    if (width <= 0 || height <= 0 || width > sourceWidth
+        || height > sourceHeight)
+      throw new IllegalArgumentException("Cannot scale " + sourceWidth + "x"
+          + sourceHeight + " down to " + width + "x" + height);
+
+    this.sourceWidth = sourceWidth;
+    this.sourceHeight = sourceHeight;
+    this.width = width;
+    this.height = height;
+    if (weights.length < sourceWidth) {
+      weights = new int[sourceWidth];
+      ends = new boolean[sourceWidth];
+      sourceRow = new int[sourceWidth];
+    }
+    if (scaledRow.length < width) {
+      rowSums = new int[width * 4];
+      sums = new long[width * 4];
+      scaledRow = new int[width];
+    } else
+      for (int i = 0; i < width * 4; i++)
+        sums[i] = 0;
+
+    // Source column x covers [x * width, (x + 1) * width) and scaled column c
+    // covers [c * sourceWidth, (c + 1) * sourceWidth)
+    int end = sourceWidth;
+    for (int x = 0; x < sourceWidth; x++) {
+      int start = x * width;
+      weights[x] = Math.min(width, end - start);
+      ends[x] = start + width >= end;
+      if (ends[x])
+        end += sourceWidth;
+    }
+
+    reciprocal = ((1L << SHIFT) + (long) sourceWidth * sourceHeight - 1)
+        / ((long) sourceWidth * sourceHeight);
+    position = 0;
+    boundary = sourceHeight;
+  }
+
+  /**
+   * Add the next source row
+   *
+   * @param pixels
+   * @param offset
+   *          of the row in the pixels
+   * @return true if a scaled row was completed into the scaled row buffer
+   */
+  private boolean add(final int[] pixels, final int offset) {
+    final int[] rowSums = this.rowSums;
+    final int[] weights = this.weights;
+    final boolean[] ends = this.ends;
+    final int width = this.width;
+    int index = 0;
+    // Sums of pixels entirely in the current scaled column, weighted by width
+    // when the column ends
+    int alphaSum = 0;
+    int redSum = 0;
+    int greenSum = 0;
+    int blueSum = 0;
+    // Weighted sums of pixels partially in the current scaled column
+    int alphaPart = 0;
+    int redPart = 0;
+    int greenPart = 0;
+    int bluePart = 0;
+    for (int x = 0; x < sourceWidth; x++) {
+      int pixel = pixels[offset + x];
+      int weight = weights[x];
+      int alpha = pixel >>> 24;
+      if (weight == width) {
+        alphaSum += alpha;
+        redSum += ((pixel >> 16) & 0xFF) * alpha;
+        greenSum += ((pixel >> 8) & 0xFF) * alpha;
+        blueSum += (pixel & 0xFF) * alpha;
+        if (!ends[x])
+          continue;
+
+        rowSums[index++] = alphaSum * width + alphaPart;
+        rowSums[index++] = redSum * width + redPart;
+        rowSums[index++] = greenSum * width + greenPart;
+        rowSums[index++] = blueSum * width + bluePart;
+        alphaSum = redSum = greenSum = blueSum = 0;
+        alphaPart = redPart = greenPart = bluePart = 0;
+      } else {
+        int red = ((pixel >> 16) & 0xFF) * alpha;
+        int green = ((pixel >> 8) & 0xFF) * alpha;
+        int blue = (pixel & 0xFF) * alpha;
+        rowSums[index++] = alphaSum * width + alphaPart + alpha * weight;
+        rowSums[index++] = redSum * width + redPart + red * weight;
+        rowSums[index++] = greenSum * width + greenPart + green * weight;
+        rowSums[index++] = blueSum * width + bluePart + blue * weight;
+        int rest = width - weight;
+        alphaSum = redSum = greenSum = blueSum = 0;
+        alphaPart = alpha * rest;
+        redPart = red * rest;
+        greenPart = green * rest;
+        bluePart = blue * rest;
+      }
+    }
+
+    long end = position + height;
+    boolean completed = end >= boundary;
+    accumulate(Math.min(end, boundary) - position);
+    if (completed) {
+      emit();
+      // Rest of a source row spanning two scaled rows is in the next one
+      if (end > boundary)
+        accumulate(end - boundary);
+      boundary += sourceHeight;
+    }
+    position = end;
+    return completed;
+  }
+
+  private void accumulate(final long weight) {
+    final long[] sums = this.sums;
+    final int[] rowSums = this.rowSums;
+    for (int i = 0; i < width * 4; i++)
+      sums[i] += rowSums[i] * weight;
+  }
+
+  private void emit() {
+    final long[] sums = this.sums;
+    final long reciprocal = this.reciprocal;
+    final long half = (long) sourceWidth * sourceHeight / 2;
+    for (int x = 0; x < width; x++) {
+      int index = x * 4;
+      long alphaSum = sums[index];
+      int alpha = (int) ((alphaSum + half) * reciprocal >>> SHIFT);
+      if (alphaSum > 0) {
+        // Colors are premultiplied so dividing by the alpha sum averages them
+        long halfAlpha = alphaSum / 2;
+        int red = (int) ((sums[index + 1] + halfAlpha) / alphaSum);
+        int green = (int) ((sums[index + 2] + halfAlpha) / alphaSum);
+        int blue = (int) ((sums[index + 3] + halfAlpha) / alphaSum);
+        scaledRow[x] = alpha << 24 | red << 16 | green << 8 | blue;
+      } else
+        scaledRow[x] = 0;
+      sums[index] = 0;
+      sums[index + 1] = 0;
+      sums[index + 2] = 0;
+      sums[index + 3] = 0;
+    }
+  }
+}
@@ -15,23 +15,26 @@
  */
 package com.github.kevinsawicki.wishlist;
 
-import static android.graphics.Bitmap.Config.ARGB_8888;
-import static android.util.Log.DEBUG;
+import static com.github.kevinsawicki.wishlist.DecodeMetrics.STAGE_DELIVERY;
+import static com.github.kevinsawicki.wishlist.DecodeMetrics.STAGE_QUEUE;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.BitmapFactory.Options;
+import android.graphics.Bitmap.Config;
 import android.os.AsyncTask;
-import android.util.Log;
 
-import java.io.File;
+import com.github.kevinsawicki.wishlist.DecodeMetrics.Listener;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
- * Task to decode a bitmap from a file path
+ * Task to decode a bitmap from a file path or other {@link BitmapSource}
+ * <p>
+ * The bitmap is loaded by a {@link BitmapLoader} that calls back into this
+ * task for every stage so subclasses can override them, and sources that
+ * cannot be decoded are deleted
  */
 public class DecodeBitmapTask extends AsyncTask<Void, Void, Bitmap> {
 
-  private static final String TAG = "DecodeBitmapTask";
-
   /**
    * Get byte count
    *
@@ -42,8 +45,6 @@ public class DecodeBitmapTask extends AsyncTask<Void, Void, Bitmap> {
     return bitmap.getRowBytes() * bitmap.getHeight();
   }
 
-  private static final byte[] BUFFER = new byte[16 * 1024];
-
   /**
    * Maximum width of decoded bitmap
    */
@@ -55,10 +56,211 @@ public class DecodeBitmapTask extends AsyncTask<Void, Void, Bitmap> {
   protected final int maxHeight;
 
   /**
-   * Path to decoded bitmap from
+   * Path to decoded bitmap from, null when decoding from a source that was not
+   * created from a path
    */
   protected final String path;
 
+  /**
+   * Source to decode bitmap from
+   */
+  protected final BitmapSource source;
+
+  /**
+   * Cache of decoded bitmaps, null if caching is disabled
+   */
+  protected BitmapCache cache;
+
+  /**
+   * Disk cache of downsampled bitmaps, null if disabled
+   */
+  protected ThumbnailCache thumbnails;
+
+  /**
+   * Pool of bitmaps to decode into, null if disabled
+   */
+  protected BitmapPool pool;
+
+  /**
+   * Index of image dimensions, null if bounds are always decoded
+   */
+  protected DimensionIndex dimensions;
+
+  /**
+   * Whether bitmaps are scaled to exactly fit within the maximum size
+   */
+  protected boolean exactSize;
+
+  /**
+   * Whether exact sizes are reached using a {@link BoxScaler} after decoding
+   * instead of scaling while decoding
+   */
+  protected boolean boxFilter;
+
+  /**
+   * Number of dominant colors stored in the dimension index when decoding,
+   * 0 to not compute colors
+   */
+  protected int paletteSize;
+
+  /**
+   * Whether opaque images are decoded using {@link Config#RGB_565}
+   */
+  protected boolean allowRgb565;
+
+  /**
+   * Whether thumbnails embedded in the EXIF header of JPEG images are decoded
+   * when large enough for the maximum size
+   */
+  protected boolean useExifThumbnail = true;
+
+  /**
+   * Transformations applied in order to decoded bitmaps, null if none
+   */
+  protected List<BitmapTransformation> transformations;
+
+  /**
+   * Decoder of the source
+   */
+  protected ImageDecoder<Bitmap> decoder = BitmapFactoryDecoder.getDefault();
+
+  /**
+   * Loader running the stages of this task
+   */
+  private final TaskLoader loader;
+
+  /**
+   * Time this task was executed, 0 if not measured
+   */
+  private volatile long queuedAt;
+
+  /**
+   * Time this task completed in the background, 0 if not measured
+   */
+  private volatile long completedAt;
+
+  /**
+   * Whether the memory cache lookup for this task's bitmap was already
+   * reported to {@link DecodeMetrics} before the task was executed
+   */
+  volatile boolean lookupRecorded;
+
+  /**
+   * Priority this task was last executed or prioritized with on a
+   * {@link DecodeExecutor}
+   */
+  volatile int priority = DecodeExecutor.PRIORITY_NORMAL;
+
+  /**
+   * Loader that runs the stages of the enclosing task
+   */
+  private class TaskLoader extends BitmapLoader {
+
+    private TaskLoader() {
+      super(DecodeBitmapTask.this.maxWidth, DecodeBitmapTask.this.maxHeight,
+          DecodeBitmapTask.this.path, DecodeBitmapTask.this.source);
+    }
+
+    /**
+     * Update the settings of this loader to the current settings of the task
+     *
+     * @return this loader
+     */
+    private TaskLoader update() {
+      cache = DecodeBitmapTask.this.cache;
+      thumbnails = DecodeBitmapTask.this.thumbnails;
+      pool = DecodeBitmapTask.this.pool;
+      dimensions = DecodeBitmapTask.this.dimensions;
+      exactSize = DecodeBitmapTask.this.exactSize;
+      boxFilter = DecodeBitmapTask.this.boxFilter;
+      paletteSize = DecodeBitmapTask.this.paletteSize;
+      allowRgb565 = DecodeBitmapTask.this.allowRgb565;
+      useExifThumbnail = DecodeBitmapTask.this.useExifThumbnail;
+      transformations = DecodeBitmapTask.this.transformations;
+      decoder = DecodeBitmapTask.this.decoder;
+      lookupRecorded = DecodeBitmapTask.this.lookupRecorded;
+      return this;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return DecodeBitmapTask.this.isCancelled();
+    }
+
+    @Override
+    protected int getMode() {
+      return DecodeBitmapTask.this.getMode();
+    }
+
+    @Override
+    protected String getCacheKey() {
+      return DecodeBitmapTask.this.getCacheKey();
+    }
+
+    @Override
+    protected void onUndecodable(final BitmapSource source) {
+      source.delete();
+    }
+
+    @Override
+    protected Bitmap transform(final Bitmap bitmap) {
+      return DecodeBitmapTask.this.transform(bitmap);
+    }
+
+    @Override
+    protected boolean isRgb565(final DecodeOptions<Bitmap> options) {
+      return DecodeBitmapTask.this.isRgb565(options);
+    }
+
+    @Override
+    protected BitmapSource getExifThumbnail(final DecodeOptions<Bitmap> bounds,
+        final int maxWidth, final int maxHeight) {
+      return DecodeBitmapTask.this.getExifThumbnail(bounds, maxWidth,
+          maxHeight);
+    }
+
+    @Override
+    protected Bitmap decode() {
+      return DecodeBitmapTask.this.decode();
+    }
+
+    @Override
+    protected Bitmap decode(final int maxWidth, final int maxHeight) {
+      return DecodeBitmapTask.this.decode(maxWidth, maxHeight);
+    }
+
+    @Override
+    protected boolean pathExists(final String path) {
+      return DecodeBitmapTask.this.pathExists(path);
+    }
+
+    private Bitmap loadDefault() {
+      return super.load();
+    }
+
+    private Bitmap transformDefault(final Bitmap bitmap) {
+      return super.transform(bitmap);
+    }
+
+    private boolean isRgb565Default(final DecodeOptions<Bitmap> options) {
+      return super.isRgb565(options);
+    }
+
+    private BitmapSource getExifThumbnailDefault(
+        final DecodeOptions<Bitmap> bounds, final int maxWidth,
+        final int maxHeight) {
+      return super.getExifThumbnail(bounds, maxWidth, maxHeight);
+    }
+
+    private Bitmap decodeDefault(final int maxWidth, final int maxHeight) {
+      return super.decode(maxWidth, maxHeight);
+    }
+
+    private boolean pathExistsDefault(final String path) {
+      return super.pathExists(path);
+    }
+  }
+
   /**
    * Create task to decode the bitmap at the specified path to the specified
    * maximum width and height
@@ -69,60 +271,295 @@ public class DecodeBitmapTask extends AsyncTask<Void, Void, Bitmap> {
    */
   public DecodeBitmapTask(final int maxWidth, final int maxHeight,
       final String path) {
+    this(maxWidth, maxHeight, path, BitmapSource.fromFile(path));
+  }
+
+  /**
+   * Create task to decode the bitmap from the specified source to the
+   * specified maximum width and height
+   *
+   * @param maxWidth
+   * @param maxHeight
+   * @param source
+   */
+  public DecodeBitmapTask(final int maxWidth, final int maxHeight,
+      final BitmapSource source) {
+    this(maxWidth, maxHeight, null, source);
+  }
+
+  private DecodeBitmapTask(final int maxWidth, final int maxHeight,
+      final String path, final BitmapSource source) {
     this.maxWidth = maxWidth;
     this.maxHeight = maxHeight;
     this.path = path;
+    this.source = source;
+    loader = new TaskLoader();
   }
 
   /**
-   * Decode {@link Bitmap} at given path
+   * Set cache to check before decoding and to store decoded bitmaps in
    *
-   * @return bitmap
+   * @param cache
+   * @return this task
    */
-  protected Bitmap decode() {
-    final Options options = new Options();
-    options.inJustDecodeBounds = true;
+  public DecodeBitmapTask setCache(final BitmapCache cache) {
+    this.cache = cache;
+    return this;
+  }
 
-    BitmapFactory.decodeFile(path, options);
-    if (options.outWidth <= 0 || options.outHeight <= 0) {
-      Log.d(TAG, "Decoding bounds of " + path + " failed");
-      new File(path).delete();
-      return null;
-    }
+  /**
+   * Set disk cache to check before decoding the original file and to store
+   * downsampled bitmaps in
+   *
+   * @param thumbnails
+   * @return this task
+   */
+  public DecodeBitmapTask setThumbnailCache(final ThumbnailCache thumbnails) {
+    this.thumbnails = thumbnails;
+    return this;
+  }
 
-    if (isCancelled())
-      return null;
+  /**
+   * Set pool of bitmaps to reuse when decoding
+   *
+   * @param pool
+   * @return this task
+   */
+  public DecodeBitmapTask setPool(final BitmapPool pool) {
+    this.pool = pool;
+    return this;
+  }
 
-    int scale = 1;
-    if (options.outWidth > maxWidth || options.outHeight > maxHeight)
-      scale = Math.max(
-          Math.round((float) options.outHeight / (float) maxHeight),
-          Math.round((float) options.outWidth / (float) maxWidth));
+  /**
+   * Set index to read image dimensions from instead of decoding bounds and to
+   * store decoded bounds in
+   *
+   * @param dimensions
+   * @return this task
+   */
+  public DecodeBitmapTask setDimensionIndex(final DimensionIndex dimensions) {
+    this.dimensions = dimensions;
+    return this;
+  }
 
-    options.inJustDecodeBounds = false;
-    options.inSampleSize = scale;
-    options.inPreferredConfig = ARGB_8888;
-    options.inPurgeable = true;
+  /**
+   * Set whether bitmaps are scaled to exactly fit within the maximum width and
+   * height
+   * <p>
+   * Exact sizing samples by the largest power of two that keeps the image at
+   * or above the target size and then scales it down to the target size while
+   * decoding. The default rounded sample size may decode bitmaps larger than
+   * the maximum size.
+   *
+   * @param exactSize
+   * @return this task
+   */
+  public DecodeBitmapTask setExactSize(final boolean exactSize) {
+    this.exactSize = exactSize;
+    return this;
+  }
 
-    Bitmap decoded;
-    synchronized (BUFFER) {
-      options.inTempStorage = BUFFER;
-      decoded = BitmapFactory.decodeFile(path, options);
-    }
+  /**
+   * Set whether exact sizes are reached by area averaging the sampled bitmap
+   * with a {@link BoxScaler} on the decoding thread
+   * <p>
+   * Area averaging does not alias when scaling down by up to twice the
+   * target size, unlike the filtering applied while decoding, at the cost of
+   * a second bitmap that is taken from the pool when possible
+   *
+   * @param boxFilter
+   * @return this task
+   */
+  public DecodeBitmapTask setBoxFilter(final boolean boxFilter) {
+    this.boxFilter = boxFilter;
+    return this;
+  }
 
-    if (Log.isLoggable(TAG, DEBUG)) {
-      if (decoded == null) {
-        Log.d(TAG, "Decoding " + path + " failed");
-        new File(path).delete();
-      } else
-        Log.d(TAG,
-            "Decoded to " + decoded.getWidth() + "x" + decoded.getHeight()
-                + " from max size: " + maxWidth + "x" + maxHeight
-                + " using scale:" + scale + " and byte count:"
-                + getByteCount(decoded));
-    }
+  /**
+   * Set number of dominant colors computed from decoded bitmaps and stored in
+   * the dimension index for images that have none indexed
+   * <p>
+   * Colors are computed from a sample of the decoded pixels so no additional
+   * decode is needed
+   *
+   * @param paletteSize
+   *          number of colors, 0 to not compute colors which is the default
+   * @return this task
+   * @see Palette#getPlaceholder(DimensionIndex, String, int)
+   */
+  public DecodeBitmapTask setPaletteSize(final int paletteSize) {
+    this.paletteSize = paletteSize;
+    return this;
+  }
+
+  /**
+   * Set whether images that the header shows are opaque are decoded using
+   * {@link Config#RGB_565}, halving the memory used compared to the
+   * {@link Config#ARGB_8888} config that is used otherwise
+   *
+   * @param allowRgb565
+   * @return this task
+   */
+  public DecodeBitmapTask setAllowRgb565(final boolean allowRgb565) {
+    this.allowRgb565 = allowRgb565;
+    return this;
+  }
+
+  /**
+   * Set whether the thumbnail embedded in the EXIF header of a JPEG image is
+   * decoded instead of the full image when it is at least as large as the
+   * size the image is decoded to
+   * <p>
+   * This is enabled by default and only reads the header of the image instead
+   * of the entire file
+   *
+   * @param useExifThumbnail
+   * @return this task
+   */
+  public DecodeBitmapTask setUseExifThumbnail(final boolean useExifThumbnail) {
+    this.useExifThumbnail = useExifThumbnail;
+    return this;
+  }
+
+  /**
+   * Add transformation applied to decoded bitmaps after all previously added
+   * transformations
+   * <p>
+   * Transformations run on the decoding thread and the transformed bitmap is
+   * cached under a key that includes the keys of all transformations
+   *
+   * @param transformation
+   * @return this task
+   */
+  public DecodeBitmapTask addTransformation(
+      final BitmapTransformation transformation) {
+    if (transformations == null)
+      transformations = new ArrayList<BitmapTransformation>();
+    transformations.add(transformation);
+    return this;
+  }
+
+  /**
+   * Apply all transformations in order to the given bitmap
+   * <p>
+   * Intermediate bitmaps are put in the pool once transformed
+   *
+   * @param bitmap
+   * @return transformed bitmap or null if cancelled before all transformations
+   *         were applied
+   */
+  protected Bitmap transform(final Bitmap bitmap) {
+    return loader.update().transformDefault(bitmap);
+  }
+
+  /**
+   * Set decoder of the source
+   *
+   * @param decoder
+   * @return this task
+   */
+  public DecodeBitmapTask setDecoder(final ImageDecoder<Bitmap> decoder) {
+    this.decoder = decoder;
+    return this;
+  }
+
+  /**
+   * Should the source be decoded using {@link Config#RGB_565}?
+   *
+   * @param options
+   *          options holding the decoded bounds
+   * @return true if allowed and the source is opaque, false otherwise
+   */
+  protected boolean isRgb565(final DecodeOptions<Bitmap> options) {
+    return loader.update().isRgb565Default(options);
+  }
+
+  /**
+   * Cancel this task without interrupting it
+   * <p>
+   * A task that has not started will never run and a task that is running
+   * stops after the current decoding pass
+   *
+   * @return true if cancelled, false otherwise
+   */
+  public boolean cancelDecode() {
+    boolean cancelled = cancel(false);
+    loader.cancel();
+    return cancelled;
+  }
+
+  /**
+   * Is the bitmap of this task still wanted?
+   * <p>
+   * Tasks held by a paused {@link DecodeExecutor} that are no longer wanted
+   * are cancelled when the executor resumes. This method is called on the UI
+   * thread.
+   *
+   * @return true if wanted, false otherwise
+   */
+  protected boolean isWanted() {
+    return true;
+  }
 
-    return decoded;
+  /**
+   * Get mode this task decodes bitmaps in
+   *
+   * @return combination of {@link BitmapCache#MODE_EXACT},
+   *         {@link BitmapCache#MODE_BOX_FILTER}, and
+   *         {@link BitmapCache#MODE_RGB_565}
+   */
+  protected int getMode() {
+    return BitmapLoader.getMode(exactSize, boxFilter, allowRgb565);
+  }
+
+  /**
+   * Get key of this task's bitmap in the cache
+   *
+   * @return key or null if the source is not cacheable
+   */
+  protected String getCacheKey() {
+    return BitmapLoader.getCacheKey(source, maxWidth, maxHeight, getMode(),
+        transformations);
+  }
+
+  /**
+   * Get the thumbnail embedded in the EXIF header of the source if it can be
+   * decoded to the target size of the image with the given bounds
+   * <p>
+   * The bounds are updated to the size of the thumbnail when one is returned
+   *
+   * @param bounds
+   * @param maxWidth
+   * @param maxHeight
+   * @return thumbnail source or null if not available or too small
+   */
+  protected BitmapSource getExifThumbnail(final DecodeOptions<Bitmap> bounds,
+      final int maxWidth, final int maxHeight) {
+    return loader.update().getExifThumbnailDefault(bounds, maxWidth,
+        maxHeight);
+  }
+
+  /**
+   * Decode {@link Bitmap} from source
+   *
+   * @return bitmap
+   */
+  protected Bitmap decode() {
+    return decode(maxWidth, maxHeight);
+  }
+
+  /**
+   * Decode {@link Bitmap} from source to the given maximum size
+   * <p>
+   * Only bitmaps decoded to this task's maximum size are stored in the
+   * thumbnail cache
+   *
+   * @param maxWidth
+   * @param maxHeight
+   * @return bitmap
+   */
+  protected Bitmap decode(final int maxWidth, final int maxHeight) {
+    return loader.update().decodeDefault(maxWidth, maxHeight);
   }
 
   /**
@@ -132,36 +569,93 @@ public class DecodeBitmapTask extends AsyncTask<Void, Void, Bitmap> {
    * @return true if exists and non-empty, false otherwise
    */
   protected boolean pathExists(final String path) {
-    File file = new File(path);
-    return file.exists() && file.length() > 0;
+    return loader.update().pathExistsDefault(path);
   }
 
   /**
    * Load bitmap
    *
    * @return bitmap
+   * @see BitmapLoader#load()
    */
   protected Bitmap load() {
-    if (pathExists(path))
-      return decode();
-    else
-      return null;
+    return loader.update().loadDefault();
+  }
+
+
+  @Override
+  protected void onPreExecute() {
+    super.onPreExecute();
+
+    queuedAt = DecodeMetrics.getListener() != null ? System.nanoTime() : 0;
   }
 
   @Override
   protected Bitmap doInBackground(final Void... params) {
-    if (!isCancelled())
-      return load();
-    else
-      return null;
+    final Listener metrics = DecodeMetrics.getListener();
+    if (metrics != null && queuedAt != 0)
+      metrics.onStage(STAGE_QUEUE, System.nanoTime() - queuedAt);
+
+    Bitmap loaded = !isCancelled() ? load() : null;
+    completedAt = metrics != null ? System.nanoTime() : 0;
+    return loaded;
+  }
+
+  @Override
+  protected void onPostExecute(final Bitmap result) {
+    super.onPostExecute(result);
+
+    final Listener metrics = DecodeMetrics.getListener();
+    if (metrics != null && completedAt != 0)
+      metrics.onStage(STAGE_DELIVERY, System.nanoTime() - completedAt);
+    release(result);
+  }
+
+  @Override
+  protected void onCancelled(final Bitmap result) {
+    super.onCancelled(result);
+
+    release(result);
+  }
+
+  /**
+   * Release the result of this task from the cache it was loaded through
+   * <p>
+   * This is called once the result is delivered, subclasses that display the
+   * result must retain it in the pool before this is called so that it is not
+   * decoded into once evicted from the cache
+   *
+   * @param result
+   */
+  private void release(final Bitmap result) {
+    if (result != null && cache != null && getCacheKey() != null)
+      cache.release(result);
+  }
+
+  @Override
+  protected void onCancelled() {
+    super.onCancelled();
+
+    final Listener metrics = DecodeMetrics.getListener();
+    if (metrics != null)
+      metrics.onCancelled(getCacheKey());
   }
 
   /**
    * Get path being decoded
    *
-   * @return path
+   * @return path or null if not decoding from a path
    */
   public String getPath() {
     return path;
   }
+
+  /**
+   * Get source being decoded
+   *
+   * @return source
+   */
+  public BitmapSource getSource() {
+    return source;
+  }
 }
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static android.os.Build.VERSION.SDK_INT;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor of {@link DecodeBitmapTask} instances backed by a fixed number of
+ * threads
+ * <p>
+ * Queued tasks run in order of priority and then most recently executed first
+ * so that images for rows that just became visible are decoded before rows
+ * that have already scrolled away.
+ * <p>
+ * The executor can be paused while a list is flinging so that rows that are
+ * only on screen for a single frame do not compete with rendering.
+ * <p>
+ * Tasks with a source that is not ready, such as a URL waiting for a
+ * connection, are set aside without holding a thread and are queued again once
+ * {@link BitmapSource#prepare(Runnable)} reports the source is ready.
+ * <p>
+ * Executing tasks on a specific executor requires API level 11 or above, on
+ * earlier versions tasks are executed using {@link DecodeBitmapTask#execute}
+ */
+public class DecodeExecutor implements Executor {
+
+  /**
+   * Priority of work that is not immediately needed such as prefetching
+   */
+  public static final int PRIORITY_LOW = -1;
+
+  /**
+   * Default priority of executed tasks
+   */
+  public static final int PRIORITY_NORMAL = 0;
+
+  /**
+   * Priority of work for views that are currently visible
+   */
+  public static final int PRIORITY_HIGH = 1;
+
+  private static DecodeExecutor defaultExecutor;
+
+  /**
+   * Get default executor with a thread for each available processor
+   *
+   * @return executor
+   */
+  public static synchronized DecodeExecutor getDefault() {
+    if (defaultExecutor == null)
+      defaultExecutor = new DecodeExecutor(Runtime.getRuntime()
+          .availableProcessors());
+    return defaultExecutor;
+  }
+
+  private class Job implements Runnable, Comparable<Job> {
+
+    private final Runnable runnable;
+
+    private final DecodeBitmapTask task;
+
+    private final long sequence;
+
+    private int priority;
+
+    private boolean prepared;
+
+    private Job(final Runnable runnable, final DecodeBitmapTask task,
+        final int priority, final long sequence) {
+      this.runnable = runnable;
+      this.task = task;
+      this.priority = priority;
+      this.sequence = sequence;
+    }
+
+    public int compareTo(final Job another) {
+      if (priority != another.priority)
+        return priority > another.priority ? -1 : 1;
+      if (sequence != another.sequence)
+        return sequence > another.sequence ? -1 : 1;
+      return 0;
+    }
+
+    public void run() {
+      if (task != null && !prepared) {
+        prepared = true;
+        if (!task.source.prepare(new Runnable() {
+
+          public void run() {
+            requeue(Job.this);
+          }
+        }))
+          return;
+      }
+      runnable.run();
+    }
+  }
+
+  private final ThreadPoolExecutor executor;
+
+  private final Map<DecodeBitmapTask, Job> queued = new HashMap<DecodeBitmapTask, Job>();
+
+  private final List<Job> held = new ArrayList<Job>();
+
+  private boolean paused;
+
+  private DecodeBitmapTask executing;
+
+  private int executingPriority = PRIORITY_NORMAL;
+
+  private long sequence;
+
+  /**
+   * Create executor with given number of threads
+   *
+   * @param threads
+   */
+  public DecodeExecutor(final int threads) {
+    final AtomicInteger count = new AtomicInteger();
+    ThreadFactory factory = new ThreadFactory() {
+
+      public Thread newThread(final Runnable runnable) {
+        Thread thread = new Thread(runnable, "DecodeExecutor #"
+            + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+    executor = new ThreadPoolExecutor(threads, threads, 1, SECONDS,
+        new PriorityBlockingQueue<Runnable>(), factory) {
+
+      @Override
+      protected void beforeExecute(final Thread thread, final Runnable runnable) {
+        dequeued(((Job) runnable).task);
+        super.beforeExecute(thread, runnable);
+      }
+    };
+  }
+
+  private synchronized void dequeued(final DecodeBitmapTask task) {
+    if (task != null)
+      queued.remove(task);
+  }
+
+  /**
+   * Execute task with {@link #PRIORITY_NORMAL} priority
+   *
+   * @param task
+   * @return task
+   */
+  public <T extends DecodeBitmapTask> T execute(final T task) {
+    return execute(task, PRIORITY_NORMAL);
+  }
+
+  /**
+   * Execute task with given priority
+   *
+   * @param task
+   * @param priority
+   * @return task
+   */
+  public <T extends DecodeBitmapTask> T execute(final T task, final int priority) {
+    task.priority = priority;
+    if (SDK_INT < 11) {
+      task.execute();
+      return task;
+    }
+
+    synchronized (this) {
+      executing = task;
+      executingPriority = priority;
+      try {
+        task.executeOnExecutor(this);
+      } finally {
+        executing = null;
+        executingPriority = PRIORITY_NORMAL;
+      }
+    }
+    return task;
+  }
+
+  /**
+   * Execute runnable with {@link #PRIORITY_NORMAL} priority
+   * <p>
+   * Runnables of tasks passed to {@link #execute(DecodeBitmapTask, int)} run
+   * with the priority of that task instead
+   *
+   * @param command
+   */
+  public synchronized void execute(final Runnable command) {
+    Job job = new Job(command, executing, executingPriority, sequence++);
+    if (executing != null)
+      queued.put(executing, job);
+    submit(job);
+  }
+
+  /**
+   * Execute runnable with given priority
+   *
+   * @param command
+   * @param priority
+   */
+  public synchronized void execute(final Runnable command, final int priority) {
+    submit(new Job(command, null, priority, sequence++));
+  }
+
+  private synchronized void requeue(final Job job) {
+    if (job.task != null)
+      queued.put(job.task, job);
+    submit(job);
+  }
+
+  private void submit(final Job job) {
+    if (paused)
+      held.add(job);
+    else
+      executor.execute(job);
+  }
+
+  /**
+   * Pause starting queued work
+   * <p>
+   * Work executed while paused is held until {@link #resume()} is called, work
+   * that is already running is not interrupted.
+   */
+  public synchronized void pause() {
+    paused = true;
+  }
+
+  /**
+   * Resume starting queued work
+   * <p>
+   * Held tasks that are no longer wanted according to
+   * {@link DecodeBitmapTask#isWanted()} are cancelled instead of being decoded.
+   * This method must be called on the UI thread.
+   */
+  public void resume() {
+    List<Job> resumed;
+    synchronized (this) {
+      if (!paused)
+        return;
+      paused = false;
+      resumed = new ArrayList<Job>(held);
+      held.clear();
+    }
+
+    // Cancelled tasks still run their job so that they complete as cancelled
+    for (Job job : resumed)
+      if (job.task != null && !job.task.isWanted())
+        job.task.cancelDecode();
+    synchronized (this) {
+      for (Job job : resumed)
+        executor.execute(job);
+    }
+  }
+
+  /**
+   * Is starting queued work paused?
+   *
+   * @return true if paused, false otherwise
+   */
+  public synchronized boolean isPaused() {
+    return paused;
+  }
+
+  /**
+   * Change priority of a task that is queued and has not started running
+   * <p>
+   * The priority is remembered even if the task is running so that an
+   * {@link ImageViewBitmapTask} cancelled while other tasks wait on it hands
+   * its decode off at that priority
+   *
+   * @param task
+   * @param priority
+   * @return true if the priority was changed, false if the task is not queued
+   */
+  public synchronized boolean setPriority(final DecodeBitmapTask task,
+      final int priority) {
+    task.priority = priority;
+    Job job = queued.get(task);
+    if (job == null)
+      return false;
+    if (job.priority == priority)
+      return true;
+    if (held.contains(job)) {
+      job.priority = priority;
+      return true;
+    }
+    if (!executor.getQueue().remove(job))
+      return false;
+
+    job.priority = priority;
+    executor.execute(job);
+    return true;
+  }
+
+  /**
+   * Stop the threads of this executor once the work already executed has run
+   * <p>
+   * Work executed after this method is called is rejected
+   */
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  /**
+   * Get number of tasks waiting to run
+   *
+   * @return queued task count
+   */
+  public synchronized int getQueuedCount() {
+    return executor.getQueue().size() + held.size();
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+/**
+ * Instrumentation of the stages that {@link DecodeBitmapTask} instances go
+ * through
+ * <p>
+ * No timings are taken and no events are created while no listener is set.
+ *
+ * @see MetricsRecorder
+ */
+public class DecodeMetrics {
+
+  /**
+   * Time between a task being executed and starting to run
+   */
+  public static final int STAGE_QUEUE = 0;
+
+  /**
+   * Time reading a bitmap from the thumbnail cache
+   */
+  public static final int STAGE_THUMBNAIL = 1;
+
+  /**
+   * Time decoding the bounds of an image
+   */
+  public static final int STAGE_BOUNDS = 2;
+
+  /**
+   * Time decoding the pixels of an image
+   */
+  public static final int STAGE_DECODE = 3;
+
+  /**
+   * Time applying transformations to a decoded bitmap
+   */
+  public static final int STAGE_TRANSFORM = 4;
+
+  /**
+   * Time between a task completing in the background and its result being
+   * delivered on the UI thread
+   */
+  public static final int STAGE_DELIVERY = 5;
+
+  /**
+   * Number of stages
+   */
+  public static final int STAGE_COUNT = 6;
+
+  /**
+   * In-memory {@link BitmapCache}
+   */
+  public static final int CACHE_MEMORY = 0;
+
+  /**
+   * Disk {@link ThumbnailCache}
+   */
+  public static final int CACHE_THUMBNAIL = 1;
+
+  /**
+   * {@link DimensionIndex} of image bounds
+   */
+  public static final int CACHE_DIMENSIONS = 2;
+
+  /**
+   * {@link BitmapPool} of reusable bitmaps
+   */
+  public static final int CACHE_POOL = 3;
+
+  /**
+   * Number of caches
+   */
+  public static final int CACHE_COUNT = 4;
+
+  /**
+   * Listener of decode events
+   * <p>
+   * Methods are called on both decoding threads and the UI thread
+   */
+  public static interface Listener {
+
+    /**
+     * Stage was completed
+     *
+     * @param stage
+     *          one of the STAGE_* constants
+     * @param nanos
+     *          elapsed time
+     */
+    void onStage(int stage, long nanos);
+
+    /**
+     * Cache was checked
+     *
+     * @param cache
+     *          one of the CACHE_* constants
+     * @param hit
+     */
+    void onLookup(int cache, boolean hit);
+
+    /**
+     * Image was decoded
+     *
+     * @param key
+     * @param sampleSize
+     * @param bytesRead
+     *          encoded size of the decoded source, -1 if unknown
+     * @param byteCount
+     *          size of the decoded bitmap
+     */
+    void onDecoded(String key, int sampleSize, long bytesRead, int byteCount);
+
+    /**
+     * Task was cancelled
+     *
+     * @param key
+     */
+    void onCancelled(String key);
+  }
+
+  private static volatile Listener listener;
+
+  /**
+   * Set listener of decode events
+   *
+   * @param listener
+   *          listener or null to stop instrumenting
+   */
+  public static void setListener(final Listener listener) {
+    DecodeMetrics.listener = listener;
+  }
+
+  /**
+   * Get listener of decode events
+   *
+   * @return listener or null if not instrumenting
+   */
+  public static Listener getListener() {
+    return listener;
+  }
+
+  private DecodeMetrics() {
+  }
+}
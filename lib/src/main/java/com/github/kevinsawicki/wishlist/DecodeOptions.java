@@ -0,0 +1,113 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+/**
+ * Options of a single decode by an {@link ImageDecoder}
+ * <p>
+ * The output fields are set when decoding bounds and may also be set by the
+ * caller when the bounds are already known.
+ *
+ * @param <I>
+ *          type of decoded image
+ */
+public class DecodeOptions<I> {
+
+  /**
+   * Factor to subsample the image by, powers of two are decoded fastest
+   */
+  public int sampleSize = 1;
+
+  /**
+   * Width to scale the sampled image to while decoding, 0 to not scale
+   */
+  public int scaledWidth;
+
+  /**
+   * Whether the image may be decoded with a 16-bit opaque pixel format
+   */
+  public boolean preferRgb565;
+
+  /**
+   * Whether the decoded image must be mutable
+   */
+  public boolean mutable;
+
+  /**
+   * Image to decode into, null to always allocate a new image
+   */
+  public I reuse;
+
+  /**
+   * Width of the undecoded image
+   */
+  public int outWidth;
+
+  /**
+   * Height of the undecoded image
+   */
+  public int outHeight;
+
+  /**
+   * Mime type of the undecoded image, null if unknown
+   */
+  public String outMimeType;
+
+  private volatile boolean cancelled;
+
+  private Runnable canceller;
+
+  /**
+   * Request the decode using these options to stop as soon as possible
+   */
+  public void requestCancel() {
+    Runnable canceller;
+    synchronized (this) {
+      cancelled = true;
+      canceller = this.canceller;
+    }
+    if (canceller != null)
+      canceller.run();
+  }
+
+  /**
+   * Has cancelling the decode using these options been requested?
+   *
+   * @return true if cancelled, false otherwise
+   */
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Set the action that interrupts the decode in progress when cancelling is
+   * requested
+   * <p>
+   * The action runs immediately if cancelling was already requested
+   *
+   * @param canceller
+   *          action or null to clear it when the decode completes
+   */
+  public void setCanceller(final Runnable canceller) {
+    boolean run;
+    synchronized (this) {
+      this.canceller = canceller;
+      run = cancelled && canceller != null;
+    }
+    if (run)
+      canceller.run();
+  }
+}
@@ -0,0 +1,437 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Index of image dimensions keyed by path so that the bounds of an unchanged
+ * image never need to be decoded more than once
+ * <p>
+ * Entries may also hold the dominant colors of the image computed by
+ * {@link Palette} so that placeholders can be shown without decoding.
+ * <p>
+ * Indexes created with a file can be persisted using {@link #save()} and are
+ * loaded from that file by {@link #load()} or on first use by any method other
+ * than {@link #peek(String)}, which never does I/O and can be called on the UI
+ * thread.
+ */
+public class DimensionIndex {
+
+  /**
+   * Width, height, and dominant colors of an image along with the
+   * modification time of the image file they were read from
+   */
+  public static class Dimensions {
+
+    /**
+     * Width in pixels
+     */
+    public final int width;
+
+    /**
+     * Height in pixels
+     */
+    public final int height;
+
+    /**
+     * Modification time of the image file
+     */
+    public final long modified;
+
+    /**
+     * Dominant colors most dominant first, null if not computed
+     */
+    public final int[] colors;
+
+    /**
+     * Create dimensions
+     *
+     * @param width
+     * @param height
+     * @param modified
+     */
+    public Dimensions(final int width, final int height, final long modified) {
+      this(width, height, modified, null);
+    }
+
+    /**
+     * Create dimensions with dominant colors
+     *
+     * @param width
+     * @param height
+     * @param modified
+     * @param colors
+     */
+    public Dimensions(final int width, final int height, final long modified,
+        final int[] colors) {
+      this.width = width;
+      this.height = height;
+      this.modified = modified;
+      this.colors = colors;
+    }
+  }
+
+  private static final int VERSION = 2;
+
+  /**
+   * Version of index files written before colors were indexed
+   */
+  private static final int VERSION_DIMENSIONS = 1;
+
+  private static DimensionIndex defaultIndex;
+
+  /**
+   * Get default index used by new {@link ImageViewBitmapTask} instances
+   * <p>
+   * The index is kept in memory only unless another index has been set using
+   * {@link #setDefault(DimensionIndex)}
+   *
+   * @return index
+   */
+  public static synchronized DimensionIndex getDefault() {
+    if (defaultIndex == null)
+      defaultIndex = new DimensionIndex(2048);
+    return defaultIndex;
+  }
+
+  /**
+   * Set default index used by new {@link ImageViewBitmapTask} instances
+   * <p>
+   * The index is loaded from its file on the default {@link DecodeExecutor} so
+   * that placeholders are available without blocking the calling thread
+   *
+   * @param index
+   */
+  public static synchronized void setDefault(final DimensionIndex index) {
+    defaultIndex = index;
+    if (index != null && !index.isLoaded())
+      DecodeExecutor.getDefault().execute(new Runnable() {
+
+        public void run() {
+          index.load();
+        }
+      }, DecodeExecutor.PRIORITY_HIGH);
+  }
+
+  private final File file;
+
+  private final int maxEntries;
+
+  private final Map<String, Dimensions> entries;
+
+  private final Object writeLock = new Object();
+
+  private boolean loaded;
+
+  private boolean dirty;
+
+  /**
+   * Create in-memory index holding at most the given number of entries
+   *
+   * @param maxEntries
+   */
+  public DimensionIndex(final int maxEntries) {
+    this(null, maxEntries);
+  }
+
+  /**
+   * Create index persisted to the given file holding at most the given number
+   * of entries
+   *
+   * @param file
+   * @param maxEntries
+   */
+  public DimensionIndex(final File file, final int maxEntries) {
+    this.file = file;
+    this.maxEntries = maxEntries;
+    loaded = file == null;
+    entries = new LinkedHashMap<String, Dimensions>(16, 0.75F, true) {
+
+      private static final long serialVersionUID = 8434215087424516469L;
+
+      @Override
+      protected boolean removeEldestEntry(
+          final Entry<String, Dimensions> eldest) {
+        return size() > DimensionIndex.this.maxEntries;
+      }
+    };
+  }
+
+  private Map<String, Dimensions> read() {
+    Map<String, Dimensions> read = new LinkedHashMap<String, Dimensions>();
+    if (!file.exists())
+      return read;
+
+    DataInputStream input = null;
+    try {
+      input = new DataInputStream(new BufferedInputStream(new FileInputStream(
+          file)));
+      int version = input.readInt();
+      if (version != VERSION && version != VERSION_DIMENSIONS)
+        return read;
+      int count = input.readInt();
+      for (int i = 0; i < count; i++) {
+        String path = input.readUTF();
+        long modified = input.readLong();
+        int width = input.readInt();
+        int height = input.readInt();
+        int[] colors = null;
+        if (version == VERSION) {
+          int colorCount = input.readByte();
+          if (colorCount >= 0) {
+            colors = new int[colorCount];
+            for (int j = 0; j < colorCount; j++)
+              colors[j] = input.readInt();
+          }
+        }
+        read.put(path, new Dimensions(width, height, modified, colors));
+      }
+    } catch (IOException e) {
+      // Ignore partially written or corrupt index files
+    } finally {
+      if (input != null)
+        try {
+          input.close();
+        } catch (IOException ignored) {
+          // Ignored
+        }
+    }
+    return read;
+  }
+
+  /**
+   * Load entries from the index file if not already loaded
+   * <p>
+   * The file is read without holding the lock used by {@link #peek(String)},
+   * entries added before loading completes take precedence over the loaded
+   * entries. This method must not be called on the UI thread.
+   *
+   * @return this index
+   */
+  public DimensionIndex load() {
+    if (isLoaded())
+      return this;
+
+    Map<String, Dimensions> read = read();
+    synchronized (this) {
+      if (loaded)
+        return this;
+      loaded = true;
+      if (read.isEmpty())
+        return this;
+
+      Map<String, Dimensions> added = new LinkedHashMap<String, Dimensions>(
+          entries);
+      entries.clear();
+      entries.putAll(read);
+      entries.putAll(added);
+    }
+    return this;
+  }
+
+  /**
+   * Has this index been loaded from its file?
+   *
+   * @return true if loaded or in-memory, false otherwise
+   */
+  public synchronized boolean isLoaded() {
+    return loaded;
+  }
+
+  /**
+   * Get dimensions of the image at the given path
+   * <p>
+   * Dimensions are only returned if the file has not been modified since they
+   * were indexed
+   *
+   * @param path
+   * @return dimensions or null if not indexed or stale
+   */
+  public Dimensions get(final String path) {
+    return get(path, new File(path).lastModified());
+  }
+
+  /**
+   * Get dimensions of the image with the given key
+   * <p>
+   * Dimensions are only returned if they were indexed with the given
+   * modification time
+   *
+   * @param key
+   * @param modified
+   * @return dimensions or null if not indexed or stale
+   */
+  public Dimensions get(final String key, final long modified) {
+    load();
+    synchronized (this) {
+      Dimensions dimensions = entries.get(key);
+      if (dimensions == null)
+        return null;
+
+      if (dimensions.modified != modified) {
+        entries.remove(key);
+        dirty = true;
+        return null;
+      }
+      return dimensions;
+    }
+  }
+
+  /**
+   * Get last known dimensions of the image at the given path without checking
+   * whether the file has changed
+   * <p>
+   * This method never does I/O and is suitable for sizing placeholders on the
+   * UI thread while an image loads, entries in the index file are not returned
+   * until the index has been loaded.
+   *
+   * @param path
+   * @return dimensions or null if not indexed or not yet loaded
+   */
+  public synchronized Dimensions peek(final String path) {
+    return entries.get(path);
+  }
+
+  /**
+   * Add dimensions of the image at the given path
+   *
+   * @param path
+   * @param dimensions
+   * @return this index
+   */
+  public DimensionIndex put(final String path, final Dimensions dimensions) {
+    load();
+    synchronized (this) {
+      entries.put(path, dimensions);
+      dirty = true;
+    }
+    return this;
+  }
+
+  /**
+   * Remove all entries from index
+   *
+   * @return this index
+   */
+  public synchronized DimensionIndex clear() {
+    entries.clear();
+    loaded = true;
+    dirty = true;
+    return this;
+  }
+
+  /**
+   * Get number of indexed images
+   *
+   * @return count
+   */
+  public int size() {
+    load();
+    synchronized (this) {
+      return entries.size();
+    }
+  }
+
+  /**
+   * Write index to its file if it has changed since it was loaded or last
+   * saved
+   * <p>
+   * Entries are copied and then written without holding the lock used by
+   * {@link #peek(String)}
+   *
+   * @return true if written or unchanged, false on failures or in-memory
+   *         indexes
+   */
+  public boolean save() {
+    if (file == null)
+      return false;
+
+    synchronized (writeLock) {
+      Map<String, Dimensions> saved;
+      synchronized (this) {
+        if (!dirty)
+          return true;
+        saved = new LinkedHashMap<String, Dimensions>(entries);
+        dirty = false;
+      }
+
+      if (write(saved))
+        return true;
+      synchronized (this) {
+        dirty = true;
+      }
+      return false;
+    }
+  }
+
+  private boolean write(final Map<String, Dimensions> saved) {
+    File parent = file.getParentFile();
+    if (parent != null && !parent.isDirectory() && !parent.mkdirs())
+      return false;
+
+    File temp = new File(file.getPath() + ".tmp");
+    DataOutputStream output = null;
+    boolean written = false;
+    try {
+      output = new DataOutputStream(new BufferedOutputStream(
+          new FileOutputStream(temp)));
+      output.writeInt(VERSION);
+      output.writeInt(saved.size());
+      for (Entry<String, Dimensions> entry : saved.entrySet()) {
+        Dimensions dimensions = entry.getValue();
+        output.writeUTF(entry.getKey());
+        output.writeLong(dimensions.modified);
+        output.writeInt(dimensions.width);
+        output.writeInt(dimensions.height);
+        int[] colors = dimensions.colors;
+        if (colors != null) {
+          int colorCount = Math.min(colors.length, Byte.MAX_VALUE);
+          output.writeByte(colorCount);
+          for (int i = 0; i < colorCount; i++)
+            output.writeInt(colors[i]);
+        } else
+          output.writeByte(-1);
+      }
+      written = true;
+    } catch (IOException e) {
+      written = false;
+    } finally {
+      if (output != null)
+        try {
+          output.close();
+        } catch (IOException e) {
+          written = false;
+        }
+    }
+
+    if (!written || !temp.renameTo(file)) {
+      temp.delete();
+      return false;
+    }
+    return true;
+  }
+}
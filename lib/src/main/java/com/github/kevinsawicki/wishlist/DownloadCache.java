@@ -0,0 +1,631 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static java.net.HttpURLConnection.HTTP_OK;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import android.content.Context;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Disk cache of images downloaded from http and https URLs
+ * <p>
+ * Each URL is downloaded at most once at a time regardless of how many
+ * streams to it are opened, streams opened while the download is in progress
+ * read the body as it is written to disk so that bounds can be decoded before
+ * the download completes.
+ * <p>
+ * Downloads run on threads separate from {@link DecodeExecutor} with their own
+ * limit on the number of open connections. Tasks on a {@link DecodeExecutor}
+ * wait for downloads to start through {@link #prepare(String, Runnable)}
+ * without holding a decoding thread and then decode while the rest of the body
+ * streams in, blocking only on bytes not yet written. Least recently used downloads are deleted once the total
+ * size of the cache directory exceeds the maximum size.
+ */
+public class DownloadCache {
+
+  private static final String SUFFIX_TEMP = ".tmp";
+
+  private static final int TIMEOUT = 20 * 1000;
+
+  private static final Comparator<File> OLDEST_FIRST = new Comparator<File>() {
+
+    public int compare(final File lhs, final File rhs) {
+      long lhsModified = lhs.lastModified();
+      long rhsModified = rhs.lastModified();
+      if (lhsModified < rhsModified)
+        return -1;
+      if (lhsModified > rhsModified)
+        return 1;
+      return 0;
+    }
+  };
+
+  private static DownloadCache defaultCache;
+
+  /**
+   * Get default cache used by sources created with
+   * {@link BitmapSource#fromUri(Context, android.net.Uri)}
+   * <p>
+   * The cache is created in a downloads directory under the application cache
+   * directory if none has been set
+   *
+   * @param context
+   * @return cache
+   */
+  public static synchronized DownloadCache getDefault(final Context context) {
+    if (defaultCache == null)
+      defaultCache = new DownloadCache(context, 20 * 1024 * 1024);
+    return defaultCache;
+  }
+
+  /**
+   * Set default cache used by sources created with
+   * {@link BitmapSource#fromUri(Context, android.net.Uri)}
+   *
+   * @param cache
+   */
+  public static synchronized void setDefault(final DownloadCache cache) {
+    defaultCache = cache;
+  }
+
+  /**
+   * Download of a single URL that streams can read while it is written
+   */
+  private class Download implements Runnable {
+
+    private final String url;
+
+    private final File file;
+
+    private final File temp;
+
+    private long written;
+
+    private boolean done;
+
+    private IOException error;
+
+    /**
+     * Callbacks of {@link #prepare(String, Runnable)} run once the first bytes
+     * are written or the download completes
+     */
+    private final List<Runnable> callbacks = new ArrayList<Runnable>();
+
+    /**
+     * Have the first bytes of the body been written and the callbacks run?
+     */
+    private boolean started;
+
+    /**
+     * Number of prepared readers yet to open this download
+     */
+    private int waiting;
+
+    private Download(final String url, final File file) {
+      this.url = url;
+      this.file = file;
+      temp = new File(directory, file.getName() + SUFFIX_TEMP);
+    }
+
+    public void run() {
+      IOException failure = null;
+      try {
+        download();
+      } catch (IOException e) {
+        failure = e;
+      } catch (RuntimeException e) {
+        failure = new IOException("Downloading " + url + " failed: " + e);
+      }
+      for (Runnable callback : complete(this, failure))
+        callback.run();
+    }
+
+    private void download() throws IOException {
+      HttpURLConnection connection = null;
+      InputStream input = null;
+      OutputStream output = null;
+      try {
+        connection = createConnection(new URL(url));
+        int status = connection.getResponseCode();
+        if (status != HTTP_OK)
+          throw new IOException("Unexpected response " + status + " from "
+              + url);
+
+        input = connection.getInputStream();
+        output = new FileOutputStream(temp);
+        byte[] buffer = new byte[8 * 1024];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+          output.write(buffer, 0, read);
+          boolean first;
+          synchronized (this) {
+            first = written == 0;
+            written += read;
+            notifyAll();
+          }
+          // Prepared readers can decode bounds while the rest streams in
+          if (first)
+            for (Runnable callback : started(this))
+              callback.run();
+        }
+        output.close();
+        output = null;
+      } finally {
+        try {
+          if (output != null)
+            output.close();
+          if (input != null)
+            input.close();
+        } catch (IOException ignored) {
+          // Ignored
+        }
+        if (connection != null)
+          connection.disconnect();
+      }
+    }
+
+    /**
+     * Open stream to the bytes downloaded so far and the bytes that will be
+     * downloaded
+     *
+     * @return stream
+     * @throws IOException
+     */
+    private synchronized InputStream open() throws IOException {
+      if (error != null)
+        throw error;
+      if (done)
+        return new FileInputStream(file);
+      return new DownloadInputStream(this, new RandomAccessFile(temp, "r"));
+    }
+
+    /**
+     * Wait until more bytes than the given count have been written
+     *
+     * @param count
+     * @return number of bytes written, or the given count when complete
+     * @throws IOException
+     */
+    private synchronized long await(final long count) throws IOException {
+      try {
+        while (written <= count && !done && error == null)
+          wait();
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException();
+      }
+      if (error != null)
+        throw error;
+      return written;
+    }
+  }
+
+  /**
+   * Stream of a download in progress that blocks until bytes are written
+   */
+  private static class DownloadInputStream extends InputStream {
+
+    private final Download download;
+
+    private final RandomAccessFile file;
+
+    private long position;
+
+    private DownloadInputStream(final Download download,
+        final RandomAccessFile file) {
+      this.download = download;
+      this.file = file;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] single = new byte[1];
+      return read(single, 0, 1) != -1 ? single[0] & 0xFF : -1;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length)
+        throws IOException {
+      if (length == 0)
+        return 0;
+      long available = download.await(position) - position;
+      if (available <= 0)
+        return -1;
+      int read = file.read(bytes, offset, (int) Math.min(length, available));
+      if (read > 0)
+        position += read;
+      return read;
+    }
+
+    @Override
+    public long skip(final long count) throws IOException {
+      long skipped = Math.max(0,
+          Math.min(count, download.await(position) - position));
+      position += skipped;
+      file.seek(position);
+      return skipped;
+    }
+
+    @Override
+    public void close() throws IOException {
+      file.close();
+    }
+  }
+
+  private final File directory;
+
+  private final long maxSize;
+
+  private final Map<String, Download> downloads = new HashMap<String, Download>();
+
+  /**
+   * Failed downloads that readers prepared for have not opened yet
+   */
+  private final Map<String, Download> failed = new HashMap<String, Download>();
+
+  private final ThreadPoolExecutor executor;
+
+  private long size = -1;
+
+  /**
+   * Create cache in a downloads directory under the application cache
+   * directory
+   *
+   * @param context
+   * @param maxSize
+   */
+  public DownloadCache(final Context context, final long maxSize) {
+    this(new File(context.getCacheDir(), "downloads"), maxSize);
+  }
+
+  /**
+   * Create cache storing at most the given number of bytes in the given
+   * directory
+   *
+   * @param directory
+   * @param maxSize
+   */
+  public DownloadCache(final File directory, final long maxSize) {
+    this.directory = directory;
+    this.maxSize = maxSize;
+
+    final AtomicInteger count = new AtomicInteger();
+    ThreadFactory factory = new ThreadFactory() {
+
+      public Thread newThread(final Runnable runnable) {
+        Thread thread = new Thread(runnable, "DownloadCache #"
+            + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+    executor = new ThreadPoolExecutor(2, 2, 1, SECONDS,
+        new LinkedBlockingQueue<Runnable>(), factory);
+  }
+
+  /**
+   * Set maximum number of connections open at the same time
+   * <p>
+   * Downloads beyond this limit wait for a connection to complete without
+   * holding a decoding thread other than the ones reading from them
+   *
+   * @param connections
+   * @return this cache
+   */
+  public DownloadCache setMaxConnections(final int connections) {
+    int limit = Math.max(1, connections);
+    synchronized (executor) {
+      if (limit > executor.getMaximumPoolSize()) {
+        executor.setMaximumPoolSize(limit);
+        executor.setCorePoolSize(limit);
+      } else {
+        executor.setCorePoolSize(limit);
+        executor.setMaximumPoolSize(limit);
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Get maximum number of connections open at the same time
+   *
+   * @return connection count
+   */
+  public int getMaxConnections() {
+    return executor.getMaximumPoolSize();
+  }
+
+  /**
+   * Create connection to URL
+   * <p>
+   * Sub-classes may override to set headers or configure the connection
+   *
+   * @param url
+   * @return connection
+   * @throws IOException
+   */
+  protected HttpURLConnection createConnection(final URL url)
+      throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.setConnectTimeout(TIMEOUT);
+    connection.setReadTimeout(TIMEOUT);
+    return connection;
+  }
+
+  /**
+   * Get file that the body of URL is stored in
+   *
+   * @param url
+   * @return file
+   */
+  protected File getFile(final String url) {
+    return new File(directory, ThumbnailCache.digest(url));
+  }
+
+  /**
+   * Get completely downloaded file of URL
+   *
+   * @param url
+   * @return file or null if not downloaded
+   */
+  public File get(final String url) {
+    File file = getFile(url);
+    return file.exists() ? file : null;
+  }
+
+  /**
+   * Open stream to body of URL, starting a download if it is not cached and
+   * not already being downloaded
+   * <p>
+   * Reading the returned stream blocks until the bytes being read have been
+   * downloaded and throws an {@link IOException} if the download fails
+   *
+   * @param url
+   * @return stream
+   * @throws IOException
+   */
+  public InputStream open(final String url) throws IOException {
+    Download download;
+    synchronized (this) {
+      File file = getFile(url);
+      if (file.exists()) {
+        file.setLastModified(System.currentTimeMillis());
+        return new FileInputStream(file);
+      }
+
+      // Prepared readers fail without downloading again
+      download = failed.get(url);
+      if (download != null) {
+        if (--download.waiting <= 0)
+          failed.remove(url);
+        throw download.error;
+      }
+
+      download = start(url);
+      if (download.waiting > 0)
+        download.waiting--;
+    }
+    return download.open();
+  }
+
+  /**
+   * Start downloading URL if it is not cached and not already being
+   * downloaded without waiting for any bytes
+   * <p>
+   * The callback is run on a download thread once the first bytes of the body
+   * have been written to disk, or once the download fails before any bytes
+   * are written, so that readers can decode bounds while the rest of the body
+   * streams in. Opening the URL after a failed download throws the failure
+   * instead of downloading again for each reader that prepared for it.
+   *
+   * @param url
+   * @param ready
+   * @return true if cached or already streaming and the callback will not be
+   *         run, false otherwise
+   */
+  public synchronized boolean prepare(final String url, final Runnable ready) {
+    if (getFile(url).exists())
+      return true;
+
+    failed.remove(url);
+    Download download;
+    try {
+      download = start(url);
+    } catch (IOException e) {
+      // Opening will fail the same way without blocking
+      return true;
+    }
+    download.waiting++;
+    if (download.started)
+      return true;
+    download.callbacks.add(ready);
+    return false;
+  }
+
+  private Download start(final String url) throws IOException {
+    Download download = downloads.get(url);
+    if (download == null) {
+      if (!directory.isDirectory() && !directory.mkdirs())
+        throw new IOException("Creating " + directory + " failed");
+      download = new Download(url, getFile(url));
+      // Create the file before it is published so streams can open it
+      new FileOutputStream(download.temp).close();
+      downloads.put(url, download);
+      executor.execute(download);
+    }
+    return download;
+  }
+
+  /**
+   * Mark download as having written its first bytes
+   *
+   * @param download
+   * @return callbacks to run
+   */
+  private synchronized List<Runnable> started(final Download download) {
+    download.started = true;
+    if (download.callbacks.isEmpty())
+      return Collections.emptyList();
+    List<Runnable> callbacks = new ArrayList<Runnable>(download.callbacks);
+    download.callbacks.clear();
+    return callbacks;
+  }
+
+  /**
+   * Complete download
+   *
+   * @param download
+   * @param error
+   * @return callbacks to run
+   */
+  private synchronized List<Runnable> complete(final Download download,
+      final IOException error) {
+    synchronized (download) {
+      if (error == null && !download.temp.renameTo(download.file))
+        download.error = new IOException("Renaming download of "
+            + download.url + " failed");
+      else
+        download.error = error;
+      if (download.error != null)
+        download.temp.delete();
+      else if (size != -1)
+        size += download.file.length();
+      downloads.remove(download.url);
+      if (download.error != null && download.waiting > 0)
+        failed.put(download.url, download);
+      trim(maxSize);
+      download.done = true;
+      download.notifyAll();
+    }
+    // Callbacks are only left when no bytes were written
+    if (download.callbacks.isEmpty())
+      return Collections.emptyList();
+    List<Runnable> callbacks = new ArrayList<Runnable>(download.callbacks);
+    download.callbacks.clear();
+    return callbacks;
+  }
+
+  /**
+   * Delete the download of URL
+   *
+   * @param url
+   * @return true if deleted, false otherwise
+   */
+  public synchronized boolean remove(final String url) {
+    return remove(getFile(url));
+  }
+
+  private synchronized boolean remove(final File file) {
+    long length = file.length();
+    boolean deleted = file.delete();
+    if (deleted && size != -1)
+      size -= length;
+    return deleted;
+  }
+
+  /**
+   * Delete least recently used downloads until the total size of the cache is
+   * at or below the given size
+   *
+   * @param targetSize
+   * @return this cache
+   */
+  public synchronized DownloadCache trim(final long targetSize) {
+    if (getSize() <= targetSize)
+      return this;
+
+    File[] files = directory.listFiles();
+    if (files == null)
+      return this;
+
+    Arrays.sort(files, OLDEST_FIRST);
+    for (File file : files) {
+      if (size <= targetSize)
+        break;
+      if (!file.getName().endsWith(SUFFIX_TEMP))
+        remove(file);
+    }
+    return this;
+  }
+
+  /**
+   * Delete all completed downloads
+   *
+   * @return this cache
+   */
+  public DownloadCache clear() {
+    return trim(0);
+  }
+
+  /**
+   * Get total size of all completed downloads
+   * <p>
+   * Partial downloads left behind by a previous process are deleted the first
+   * time the size is computed
+   *
+   * @return size in bytes
+   */
+  public synchronized long getSize() {
+    if (size == -1) {
+      size = 0;
+      File[] files = directory.listFiles();
+      if (files != null)
+        for (File file : files)
+          if (!file.getName().endsWith(SUFFIX_TEMP))
+            size += file.length();
+          else if (!isDownloading(file))
+            file.delete();
+    }
+    return size;
+  }
+
+  private boolean isDownloading(final File temp) {
+    for (Download download : downloads.values())
+      if (download.temp.equals(temp))
+        return true;
+    return false;
+  }
+
+  /**
+   * Get maximum size of all completed downloads
+   *
+   * @return maximum size in bytes
+   */
+  public long getMaxSize() {
+    return maxSize;
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+/**
+ * Decoder of images from a {@link BitmapSource}
+ * <p>
+ * {@link BitmapFactoryDecoder} decodes Android bitmaps and is what
+ * {@link DecodeBitmapTask} uses. {@link DecodeBitmapTask} only accepts bitmap
+ * decoders, other implementations can be called directly to measure decoding
+ * where {@link android.graphics.BitmapFactory} is not available.
+ *
+ * @param <I>
+ *          type of decoded image
+ */
+public interface ImageDecoder<I> {
+
+  /**
+   * Decode the width, height and mime type of the source into the output
+   * fields of the given options
+   * <p>
+   * The width and height are set to -1 when decoding fails
+   *
+   * @param source
+   * @param options
+   */
+  void decodeBounds(BitmapSource source, DecodeOptions<I> options);
+
+  /**
+   * Decode the source using the given options
+   *
+   * @param source
+   * @param options
+   * @return image or null if decoding failed or was cancelled
+   */
+  I decode(BitmapSource source, DecodeOptions<I> options);
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Helpers for reading the header of encoded images
+ */
+public class ImageHeader {
+
+  private static final int PNG_COLOR_GRAY_ALPHA = 4;
+
+  private static final int PNG_COLOR_RGB_ALPHA = 6;
+
+  private static final int MAX_PNG_CHUNKS = 64;
+
+  private static final int MAX_JPEG_SEGMENTS = 32;
+
+  private static final int EXIF_THUMBNAIL_OFFSET = 0x0201;
+
+  private static final int EXIF_THUMBNAIL_LENGTH = 0x0202;
+
+  /**
+   * Is the image in the given stream guaranteed to have no transparent pixels?
+   * <p>
+   * JPEG images are always opaque, PNG and WebP images are opaque when their
+   * header declares no alpha channel or transparency. All other formats are
+   * treated as possibly transparent.
+   *
+   * @param stream
+   * @return true if opaque, false if possibly transparent or unknown
+   * @throws IOException
+   */
+  public static boolean isOpaque(final InputStream stream) throws IOException {
+    DataInputStream input = new DataInputStream(stream);
+    try {
+      int magic = input.readInt();
+      if ((magic >>> 16) == 0xFFD8)
+        return true;
+      if (magic == 0x89504E47)
+        return isOpaquePng(input);
+      if (magic == 0x52494646)
+        return isOpaqueWebP(input);
+      return false;
+    } catch (EOFException e) {
+      return false;
+    }
+  }
+
+  private static boolean isOpaquePng(final DataInputStream input)
+      throws IOException {
+    // Remainder of signature
+    input.readInt();
+
+    for (int i = 0; i < MAX_PNG_CHUNKS; i++) {
+      int length = input.readInt();
+      int type = input.readInt();
+      if (type == 0x49484452) { // IHDR
+        input.readInt(); // Width
+        input.readInt(); // Height
+        input.readByte(); // Bit depth
+        int colorType = input.readUnsignedByte();
+        if (colorType == PNG_COLOR_GRAY_ALPHA
+            || colorType == PNG_COLOR_RGB_ALPHA)
+          return false;
+        skip(input, length - 10 + 4);
+      } else if (type == 0x74524E53) // tRNS
+        return false;
+      else if (type == 0x49444154) // IDAT
+        return true;
+      else
+        skip(input, length + 4);
+    }
+    return false;
+  }
+
+  private static boolean isOpaqueWebP(final DataInputStream input)
+      throws IOException {
+    // File size
+    input.readInt();
+    if (input.readInt() != 0x57454250) // WEBP
+      return false;
+
+    int chunk = input.readInt();
+    if (chunk == 0x56503820) // VP8 lossy
+      return true;
+
+    // Chunk size
+    input.readInt();
+    if (chunk == 0x5650384C) { // VP8L lossless
+      input.readByte(); // Signature
+      int bits = Integer.reverseBytes(input.readInt());
+      return (bits & 0x10000000) == 0;
+    }
+    if (chunk == 0x56503858) // VP8X extended
+      return (input.readUnsignedByte() & 0x10) == 0;
+    return false;
+  }
+
+  /**
+   * Get the thumbnail embedded in the EXIF header of the JPEG image in the
+   * given stream
+   * <p>
+   * Only the segments before the image data are read
+   *
+   * @param stream
+   * @return encoded JPEG thumbnail or null if none
+   * @throws IOException
+   */
+  public static byte[] getExifThumbnail(final InputStream stream)
+      throws IOException {
+    DataInputStream input = new DataInputStream(stream);
+    try {
+      if (input.readUnsignedShort() != 0xFFD8)
+        return null;
+
+      for (int i = 0; i < MAX_JPEG_SEGMENTS; i++) {
+        int marker = input.readUnsignedShort();
+        if ((marker & 0xFF00) != 0xFF00)
+          return null;
+        // Start of scan or end of image
+        if (marker == 0xFFDA || marker == 0xFFD9)
+          return null;
+
+        int length = input.readUnsignedShort() - 2;
+        if (length < 0)
+          return null;
+        if (marker == 0xFFE1) { // APP1
+          byte[] segment = new byte[length];
+          input.readFully(segment);
+          byte[] thumbnail = getExifThumbnail(segment);
+          if (thumbnail != null)
+            return thumbnail;
+        } else
+          skip(input, length);
+      }
+      return null;
+    } catch (EOFException e) {
+      return null;
+    }
+  }
+
+  private static byte[] getExifThumbnail(final byte[] segment) {
+    if (segment.length < 14 || segment[0] != 'E' || segment[1] != 'x'
+        || segment[2] != 'i' || segment[3] != 'f' || segment[4] != 0
+        || segment[5] != 0)
+      return null;
+
+    // Offsets are relative to the TIFF header following the identifier
+    final int tiff = 6;
+    boolean little;
+    if (segment[tiff] == 'I' && segment[tiff + 1] == 'I')
+      little = true;
+    else if (segment[tiff] == 'M' && segment[tiff + 1] == 'M')
+      little = false;
+    else
+      return null;
+    if (getShort(segment, tiff + 2, little) != 42)
+      return null;
+
+    // Skip to IFD1 which describes the thumbnail
+    int ifd0 = tiff + getInt(segment, tiff + 4, little);
+    if (ifd0 < tiff || ifd0 + 2 > segment.length)
+      return null;
+    int next = ifd0 + 2 + getShort(segment, ifd0, little) * 12;
+    if (next + 4 > segment.length)
+      return null;
+    int ifd1Offset = getInt(segment, next, little);
+    if (ifd1Offset <= 0)
+      return null;
+    int ifd1 = tiff + ifd1Offset;
+    if (ifd1 + 2 > segment.length)
+      return null;
+
+    int count = getShort(segment, ifd1, little);
+    int offset = -1;
+    int length = -1;
+    for (int i = 0; i < count; i++) {
+      int entry = ifd1 + 2 + i * 12;
+      if (entry + 12 > segment.length)
+        return null;
+      int tag = getShort(segment, entry, little);
+      if (tag == EXIF_THUMBNAIL_OFFSET)
+        offset = getInt(segment, entry + 8, little);
+      else if (tag == EXIF_THUMBNAIL_LENGTH)
+        length = getInt(segment, entry + 8, little);
+    }
+    if (offset <= 0 || length <= 2)
+      return null;
+
+    int start = tiff + offset;
+    if (start < tiff || start + length > segment.length
+        || start + length < start)
+      return null;
+    if ((segment[start] & 0xFF) != 0xFF || (segment[start + 1] & 0xFF) != 0xD8)
+      return null;
+
+    byte[] thumbnail = new byte[length];
+    System.arraycopy(segment, start, thumbnail, 0, length);
+    return thumbnail;
+  }
+
+  private static int getShort(final byte[] data, final int offset,
+      final boolean little) {
+    int first = data[offset] & 0xFF;
+    int second = data[offset + 1] & 0xFF;
+    return little ? second << 8 | first : first << 8 | second;
+  }
+
+  private static int getInt(final byte[] data, final int offset,
+      final boolean little) {
+    int high = getShort(data, offset + (little ? 2 : 0), little);
+    int low = getShort(data, offset + (little ? 0 : 2), little);
+    return high << 16 | low;
+  }
+
+  private static void skip(final InputStream input, final long count)
+      throws IOException {
+    long remaining = count;
+    while (remaining > 0) {
+      long skipped = input.skip(remaining);
+      if (skipped <= 0) {
+        if (input.read() == -1)
+          throw new EOFException();
+        skipped = 1;
+      }
+      remaining -= skipped;
+    }
+  }
+
+  private ImageHeader() {
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static android.widget.AbsListView.OnScrollListener.SCROLL_STATE_IDLE;
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.widget.AbsListView;
+import android.widget.AbsListView.OnScrollListener;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Scroll listener that decodes the images of the items about to scroll into
+ * view into the {@link BitmapCache#getDefault()} cache
+ * <p>
+ * Items ahead of the scroll direction are decoded with
+ * {@link DecodeExecutor#PRIORITY_LOW} priority so they never delay images of
+ * visible rows, the nearest item is queued last so that it is decoded first.
+ * Rows bound with {@link ImageViewBitmapTask} while their image is being
+ * prefetched wait on the prefetch instead of decoding it again. Pending
+ * decodes are cancelled when the scroll direction reverses. The number of
+ * items decoded ahead grows with the scroll speed and the measured time it
+ * takes to decode an image.
+ * <p>
+ * The maximum size passed to the constructor must match the size used to bind
+ * the images with {@link ImageViewBitmapTask} for the prefetched bitmaps to be
+ * found in the cache.
+ */
+public abstract class ImagePrefetcher implements OnScrollListener {
+
+  private class PrefetchTask extends ImageViewBitmapTask {
+
+    private PrefetchTask(final int maxWidth, final int maxHeight,
+        final BitmapSource source) {
+      super(maxWidth, maxHeight, source, null);
+    }
+
+    @Override
+    protected boolean isWanted() {
+      return true;
+    }
+
+    @Override
+    protected Bitmap decode() {
+      long start = SystemClock.uptimeMillis();
+      Bitmap bitmap = super.decode();
+      if (bitmap != null && !isCancelled())
+        addLatency(SystemClock.uptimeMillis() - start);
+      return bitmap;
+    }
+  }
+
+  /**
+   * Weight of the newest sample in the moving averages of decode latency and
+   * scroll speed
+   */
+  private static final float SMOOTHING = 0.25F;
+
+  private final int maxWidth;
+
+  private final int maxHeight;
+
+  private final Map<Integer, DecodeBitmapTask> tasks = new HashMap<Integer, DecodeBitmapTask>();
+
+  private int minimumAhead = 2;
+
+  private int maximumAhead = 20;
+
+  private int direction;
+
+  private int lastFirst = -1;
+
+  private long lastTime;
+
+  private float speed;
+
+  private volatile float latency;
+
+  /**
+   * Create prefetcher of images decoded to the given maximum size
+   *
+   * @param maxWidth
+   * @param maxHeight
+   */
+  public ImagePrefetcher(final int maxWidth, final int maxHeight) {
+    this.maxWidth = maxWidth;
+    this.maxHeight = maxHeight;
+  }
+
+  /**
+   * Set bounds of the number of items to prefetch ahead of the visible items
+   *
+   * @param minimum
+   *          items prefetched regardless of scroll speed
+   * @param maximum
+   * @return this prefetcher
+   */
+  public ImagePrefetcher setRange(final int minimum, final int maximum) {
+    minimumAhead = minimum;
+    maximumAhead = maximum;
+    return this;
+  }
+
+  /**
+   * Get source of the image of the item at the given position
+   *
+   * @param position
+   * @return source or null if the item has no image
+   */
+  protected abstract BitmapSource getSource(int position);
+
+  private synchronized void addLatency(final long elapsed) {
+    if (latency == 0)
+      latency = elapsed;
+    else
+      latency += (elapsed - latency) * SMOOTHING;
+  }
+
+  /**
+   * Get average time in milliseconds taken to decode a prefetched image
+   *
+   * @return latency
+   */
+  public float getLatency() {
+    return latency;
+  }
+
+  /**
+   * Get number of items to prefetch ahead of the visible items for the current
+   * scroll speed and decode latency
+   *
+   * @return item count
+   */
+  public int getAheadCount() {
+    int ahead = minimumAhead + (int) Math.ceil(speed * latency);
+    return Math.max(minimumAhead, Math.min(maximumAhead, ahead));
+  }
+
+  /**
+   * Cancel all pending prefetches
+   */
+  public void cancel() {
+    for (DecodeBitmapTask task : tasks.values())
+      task.cancelDecode();
+    tasks.clear();
+  }
+
+  public void onScrollStateChanged(final AbsListView view,
+      final int scrollState) {
+    if (scrollState == SCROLL_STATE_IDLE)
+      speed = 0;
+  }
+
+  public void onScroll(final AbsListView view, final int firstVisibleItem,
+      final int visibleItemCount, final int totalItemCount) {
+    if (visibleItemCount == 0)
+      return;
+
+    long now = SystemClock.uptimeMillis();
+    if (lastFirst != -1 && firstVisibleItem != lastFirst) {
+      int moved = firstVisibleItem - lastFirst;
+      int newDirection = moved > 0 ? 1 : -1;
+      if (direction != 0 && newDirection != direction)
+        cancel();
+      direction = newDirection;
+
+      long elapsed = Math.max(1, now - lastTime);
+      speed += ((float) Math.abs(moved) / elapsed - speed) * SMOOTHING;
+    }
+    if (firstVisibleItem != lastFirst) {
+      lastFirst = firstVisibleItem;
+      lastTime = now;
+    }
+
+    int ahead = getAheadCount();
+    int start;
+    int end;
+    if (direction >= 0) {
+      start = firstVisibleItem + visibleItemCount;
+      end = Math.min(totalItemCount, start + ahead);
+    } else {
+      end = firstVisibleItem;
+      start = Math.max(0, end - ahead);
+    }
+    prefetch(firstVisibleItem, firstVisibleItem + visibleItemCount, start,
+        end);
+  }
+
+  private void prefetch(final int firstVisible, final int lastVisible,
+      final int start, final int end) {
+    // Cancel prefetches outside both the visible and prefetched items
+    Iterator<Entry<Integer, DecodeBitmapTask>> iterator = tasks.entrySet()
+        .iterator();
+    while (iterator.hasNext()) {
+      Entry<Integer, DecodeBitmapTask> entry = iterator.next();
+      int position = entry.getKey();
+      if ((position < firstVisible || position >= lastVisible)
+          && (position < start || position >= end)) {
+        entry.getValue().cancelDecode();
+        iterator.remove();
+      }
+    }
+
+    // Most recently executed tasks run first so queue the nearest item last
+    for (int i = start; i < end; i++) {
+      int position = direction >= 0 ? start + end - 1 - i : i;
+      if (tasks.containsKey(position))
+        continue;
+      BitmapSource source = getSource(position);
+      if (source == null || source.getKey() == null)
+        continue;
+      DecodeBitmapTask task = ImageViewBitmapTask.prefetch(new PrefetchTask(
+          maxWidth, maxHeight, source), DecodeExecutor.PRIORITY_LOW);
+      if (task != null)
+        tasks.put(position, task);
+    }
+  }
+}
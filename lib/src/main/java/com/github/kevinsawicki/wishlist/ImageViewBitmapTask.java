@@ -16,16 +16,267 @@
 package com.github.kevinsawicki.wishlist;
 
 import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
 import android.view.animation.AnimationUtils;
 import android.widget.ImageView;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Task to decode a bitmap and set it on an {@link ImageView}
  */
 public class ImageViewBitmapTask extends DecodeBitmapTask {
 
+  /**
+   * Tasks started by {@link #bind(int, int, String, ImageView)} or
+   * {@link #prefetch(ImageViewBitmapTask, int)} that are decoding, keyed by
+   * {@link #getCacheKey()}
+   * <p>
+   * Only accessed from the UI thread
+   */
+  private static final Map<String, ImageViewBitmapTask> IN_FLIGHT = new HashMap<String, ImageViewBitmapTask>();
+
+  /**
+   * Set the bitmap at the given path on the given view
+   * <p>
+   * The bitmap is set immediately when present in the
+   * {@link BitmapCache#getDefault()} cache, otherwise a new task is started on
+   * the {@link DecodeExecutor#getDefault()} executor to decode it.
+   * <p>
+   * If a task is already decoding the same path to the same size then no new
+   * decode is started and the returned task is instead set on the view once
+   * the running task completes.
+   *
+   * @param maxWidth
+   * @param maxHeight
+   * @param path
+   * @param view
+   * @return task started or null if the bitmap was set from the cache
+   */
+  public static ImageViewBitmapTask bind(final int maxWidth,
+      final int maxHeight, final String path, final ImageView view) {
+    return bind(maxWidth, maxHeight, path, view, false);
+  }
+
+  /**
+   * Set the bitmap at the given path on the given view, showing a low
+   * resolution preview while decoding when progressive
+   *
+   * @param maxWidth
+   * @param maxHeight
+   * @param path
+   * @param view
+   * @param progressive
+   * @return task started or null if the bitmap was set from the cache
+   * @see #setProgressive(boolean)
+   */
+  public static ImageViewBitmapTask bind(final int maxWidth,
+      final int maxHeight, final String path, final ImageView view,
+      final boolean progressive) {
+    String key = BitmapCache.getKey(path, maxWidth, maxHeight);
+    ImageViewBitmapTask pending = getPending(key, view);
+    if (pending != null)
+      return pending;
+    if (setCached(key, view))
+      return null;
+
+    ImageViewBitmapTask task = new ImageViewBitmapTask(maxWidth, maxHeight,
+        path, view).setProgressive(progressive);
+    task.lookupRecorded = true;
+    return start(key, task);
+  }
+
+  /**
+   * Set the bitmap from the given source on the given view
+   * <p>
+   * Bitmaps from sources without a key are always decoded, otherwise this
+   * method behaves the same as {@link #bind(int, int, String, ImageView)}
+   *
+   * @param maxWidth
+   * @param maxHeight
+   * @param source
+   * @param view
+   * @return task started or null if the bitmap was set from the cache
+   */
+  public static ImageViewBitmapTask bind(final int maxWidth,
+      final int maxHeight, final BitmapSource source, final ImageView view) {
+    return bind(maxWidth, maxHeight, source, view, false);
+  }
+
+  /**
+   * Set the bitmap from the given source on the given view, showing a low
+   * resolution preview while decoding when progressive
+   *
+   * @param maxWidth
+   * @param maxHeight
+   * @param source
+   * @param view
+   * @param progressive
+   * @return task started or null if the bitmap was set from the cache
+   * @see #setProgressive(boolean)
+   */
+  public static ImageViewBitmapTask bind(final int maxWidth,
+      final int maxHeight, final BitmapSource source, final ImageView view,
+      final boolean progressive) {
+    String key = source.getKey();
+    if (key != null) {
+      key = BitmapCache.getKey(key, maxWidth, maxHeight);
+      ImageViewBitmapTask pending = getPending(key, view);
+      if (pending != null)
+        return pending;
+      if (setCached(key, view))
+        return null;
+    }
+
+    ImageViewBitmapTask task = new ImageViewBitmapTask(maxWidth, maxHeight,
+        source, view).setProgressive(progressive);
+    task.lookupRecorded = key != null;
+    return start(key, task);
+  }
+
+  /**
+   * Set the bitmap of the given task on the task's view
+   * <p>
+   * Tasks configured before binding, such as with transformations, are
+   * de-duplicated and checked against the cache the same as the other bind
+   * methods
+   *
+   * @param task
+   * @return task started or null if the bitmap was set from the cache
+   */
+  public static ImageViewBitmapTask bind(final ImageViewBitmapTask task) {
+    ImageView view = task.getView();
+    String key = task.getCacheKey();
+    if (view != null && key != null) {
+      ImageViewBitmapTask pending = getPending(key, view);
+      if (pending != null)
+        return pending;
+      if (setCached(key, view))
+        return null;
+      task.lookupRecorded = true;
+    }
+
+    return start(key, task);
+  }
+
+  private static ImageViewBitmapTask getPending(final String key,
+      final ImageView view) {
+    Object tag = view.getTag();
+    if (tag instanceof ImageViewBitmapTask
+        && key.equals(((ImageViewBitmapTask) tag).getCacheKey()))
+      return (ImageViewBitmapTask) tag;
+    else
+      return null;
+  }
+
+  private static boolean setCached(final String key, final ImageView view) {
+    BitmapCache cache = BitmapCache.getDefault();
+    Bitmap cached = cache.get(key);
+    DecodeMetrics.Listener metrics = DecodeMetrics.getListener();
+    if (metrics != null)
+      metrics.onLookup(DecodeMetrics.CACHE_MEMORY, cached != null);
+    if (cached == null)
+      return false;
+
+    unbind(view);
+    if (view.getAnimation() != null)
+      view.clearAnimation();
+    setImageBitmap(view, cached, BitmapPool.getDefault());
+    cache.release(cached);
+    return true;
+  }
+
+  private static ImageViewBitmapTask start(final String key,
+      final ImageViewBitmapTask task) {
+    if (key != null) {
+      ImageViewBitmapTask running = IN_FLIGHT.get(key);
+      if (running != null && !running.isCancelled()) {
+        task.onPreExecute();
+        running.addFollower(task);
+        if (running.prefetch) {
+          running.prefetch = false;
+          DecodeExecutor.getDefault().setPriority(running,
+              DecodeExecutor.PRIORITY_NORMAL);
+        }
+        return task;
+      }
+      IN_FLIGHT.put(key, task);
+    }
+    return DecodeExecutor.getDefault().execute(task);
+  }
+
+  /**
+   * Start decoding the bitmap of a task not bound to any view
+   * <p>
+   * Tasks bound to the same key while it is decoding wait on it instead of
+   * decoding the bitmap again and raise it to
+   * {@link DecodeExecutor#PRIORITY_NORMAL} priority if it is still queued.
+   *
+   * @param task
+   * @param priority
+   * @return task started or null if the same key is already decoding
+   */
+  static ImageViewBitmapTask prefetch(final ImageViewBitmapTask task,
+      final int priority) {
+    String key = task.getCacheKey();
+    if (key != null) {
+      ImageViewBitmapTask running = IN_FLIGHT.get(key);
+      if (running != null && !running.isCancelled())
+        return null;
+      IN_FLIGHT.put(key, task);
+    }
+    task.prefetch = true;
+    return DecodeExecutor.getDefault().execute(task, priority);
+  }
+
+  /**
+   * Clear tag of view and cancel the task previously bound to it
+   *
+   * @param view
+   */
+  protected static void unbind(final ImageView view) {
+    Object previous = view.getTag();
+    view.setTag(null);
+    if (previous instanceof ImageViewBitmapTask)
+      ((ImageViewBitmapTask) previous).cancelDecode();
+  }
+
+  /**
+   * Set bitmap on view and release the bitmap previously displayed by the view
+   * so that it can be reused once evicted from the cache
+   *
+   * @param view
+   * @param bitmap
+   * @param pool
+   */
+  protected static void setImageBitmap(final ImageView view,
+      final Bitmap bitmap, final BitmapPool pool) {
+    if (pool != null) {
+      if (bitmap != null)
+        pool.retain(bitmap);
+      Drawable previous = view.getDrawable();
+      if (previous instanceof BitmapDrawable)
+        pool.release(((BitmapDrawable) previous).getBitmap());
+    }
+
+    if (bitmap != null)
+      view.setImageBitmap(bitmap);
+    else
+      view.setImageDrawable(null);
+  }
+
+  /**
+   * Ratio of the maximum size to the maximum size of previews decoded in
+   * progressive mode
+   */
+  private static final int PREVIEW_DIVISOR = 8;
+
   /**
    * View being updated
    */
@@ -36,6 +287,37 @@ public class ImageViewBitmapTask extends DecodeBitmapTask {
    */
   protected boolean fadeIn = true;
 
+  /**
+   * Whether a low resolution preview is shown while decoding
+   */
+  protected boolean progressive;
+
+  /**
+   * Preview decoded in progressive mode
+   */
+  private volatile Bitmap preview;
+
+  /**
+   * Whether the preview is showing on this task's view
+   */
+  private boolean previewShown;
+
+  /**
+   * Tasks waiting on this task's bitmap instead of decoding it themselves
+   */
+  private List<ImageViewBitmapTask> followers;
+
+  /**
+   * Task this task is waiting on, null if this task decodes its own bitmap
+   */
+  private ImageViewBitmapTask leader;
+
+  /**
+   * Whether this task was started by a prefetch and no bound task has waited
+   * on it yet
+   */
+  private boolean prefetch;
+
   /**
    * Create task to set bitmap at path on given image view
    *
@@ -49,6 +331,30 @@ public class ImageViewBitmapTask extends DecodeBitmapTask {
     super(maxWidth, maxHeight, path);
 
     this.view = new WeakReference<ImageView>(view);
+    setDefaults();
+  }
+
+  /**
+   * Create task to set bitmap from source on given image view
+   *
+   * @param maxWidth
+   * @param maxHeight
+   * @param source
+   * @param view
+   */
+  public ImageViewBitmapTask(final int maxWidth, final int maxHeight,
+      final BitmapSource source, final ImageView view) {
+    super(maxWidth, maxHeight, source);
+
+    this.view = new WeakReference<ImageView>(view);
+    setDefaults();
+  }
+
+  private void setDefaults() {
+    cache = BitmapCache.getDefault();
+    thumbnails = ThumbnailCache.getDefault();
+    pool = BitmapPool.getDefault();
+    dimensions = DimensionIndex.getDefault();
   }
 
   /**
@@ -60,6 +366,25 @@ public class ImageViewBitmapTask extends DecodeBitmapTask {
     return this;
   }
 
+  /**
+   * Set whether a low resolution preview is decoded and shown before the full
+   * resolution bitmap
+   * <p>
+   * The preview is decoded at an eighth of the maximum size and is replaced by
+   * the full resolution bitmap without fading it in again
+   *
+   * @param progressive
+   * @return this task
+   */
+  public ImageViewBitmapTask setProgressive(final boolean progressive) {
+    this.progressive = progressive;
+    return this;
+  }
+
+  /**
+   * Clear the view and show the dominant color of the image as a placeholder
+   * when it is known from the dimension index
+   */
   @Override
   protected void onPreExecute() {
     super.onPreExecute();
@@ -68,7 +393,12 @@ public class ImageViewBitmapTask extends DecodeBitmapTask {
     if (view == null)
       return;
 
-    view.setImageDrawable(null);
+    if (view.getTag() != this)
+      unbind(view);
+    setImageBitmap(view, null, pool);
+    int placeholder = Palette.getPlaceholder(dimensions, source.getKey(), 0);
+    if (placeholder != 0)
+      view.setImageDrawable(new ColorDrawable(placeholder));
     if (view.getAnimation() != null)
       view.clearAnimation();
     view.setTag(this);
@@ -83,10 +413,184 @@ public class ImageViewBitmapTask extends DecodeBitmapTask {
     return view.get();
   }
 
+  /**
+   * Is this task still the most recent task bound to its view?
+   *
+   * @return true if bound, false otherwise
+   */
+  protected boolean isBound() {
+    ImageView view = getView();
+    return view != null && equals(view.getTag());
+  }
+
+  /**
+   * Is this task still bound to a view that is attached to a window?
+   *
+   * @return true if bound and attached, false otherwise
+   */
+  protected boolean isAttached() {
+    ImageView view = getView();
+    return view != null && equals(view.getTag())
+        && view.getWindowToken() != null;
+  }
+
+  /**
+   * Is this task or a task waiting on it bound to an attached view?
+   */
+  @Override
+  protected boolean isWanted() {
+    if (isAttached())
+      return true;
+    if (followers != null)
+      for (ImageViewBitmapTask follower : followers)
+        if (follower.isAttached())
+          return true;
+    return false;
+  }
+
+  private void addFollower(final ImageViewBitmapTask follower) {
+    if (followers == null)
+      followers = new ArrayList<ImageViewBitmapTask>();
+    followers.add(follower);
+    follower.leader = this;
+  }
+
+  private boolean hasBoundFollowers() {
+    if (followers != null)
+      for (ImageViewBitmapTask follower : followers)
+        if (follower.isBound())
+          return true;
+    return false;
+  }
+
+  /**
+   * Cancel this task once its view has been bound to a different task
+   * <p>
+   * A task waiting on another task's decode stops waiting and a task with
+   * other tasks still waiting on it keeps decoding for them
+   */
+  @Override
+  public boolean cancelDecode() {
+    if (leader != null) {
+      leader.followers.remove(this);
+      leader = null;
+      return true;
+    }
+    if (hasBoundFollowers())
+      return false;
+    return super.cancelDecode();
+  }
+
+  private void removeInFlight() {
+    String key = getCacheKey();
+    if (key != null && IN_FLIGHT.get(key) == this)
+      IN_FLIGHT.remove(key);
+  }
+
+  @Override
+  protected void onCancelled() {
+    super.onCancelled();
+
+    removeInFlight();
+    if (followers == null)
+      return;
+
+    // Hand off the decode and its priority to the first follower still bound
+    // to its view
+    List<ImageViewBitmapTask> waiting = followers;
+    followers = null;
+    while (!waiting.isEmpty()) {
+      ImageViewBitmapTask next = waiting.remove(0);
+      if (!next.isBound())
+        continue;
+
+      next.leader = null;
+      next.followers = waiting;
+      for (ImageViewBitmapTask follower : waiting)
+        follower.leader = next;
+      IN_FLIGHT.put(next.getCacheKey(), next);
+      DecodeExecutor.getDefault().execute(next, priority);
+      break;
+    }
+  }
+
+  @Override
+  protected Bitmap decode() {
+    if (progressive && !isCancelled()) {
+      Bitmap decoded = decode(Math.max(1, maxWidth / PREVIEW_DIVISOR),
+          Math.max(1, maxHeight / PREVIEW_DIVISOR));
+      if (decoded != null && !isCancelled()) {
+        preview = transform(decoded);
+        publishProgress();
+      }
+    }
+    return super.decode();
+  }
+
+  @Override
+  protected void onProgressUpdate(final Void... values) {
+    super.onProgressUpdate(values);
+
+    Bitmap preview = this.preview;
+    if (preview == null)
+      return;
+
+    setPreview(preview);
+    if (followers != null)
+      for (ImageViewBitmapTask follower : followers)
+        follower.setPreview(preview);
+  }
+
   @Override
   protected void onPostExecute(final Bitmap result) {
+    removeInFlight();
+    setResult(result);
+    if (followers != null) {
+      for (ImageViewBitmapTask follower : followers) {
+        follower.leader = null;
+        follower.setResult(result);
+      }
+      followers = null;
+    }
+
+    // Previews are never cached and can be reused once no longer displayed
+    Bitmap preview = this.preview;
+    this.preview = null;
+    if (preview != null && preview != result && pool != null)
+      pool.put(preview);
+
+    // The cache releases the result so it must be displayed first
     super.onPostExecute(result);
+  }
 
+  /**
+   * Set decoded preview on view if this task is still bound to it
+   * <p>
+   * The task stays bound to the view until the full resolution bitmap is set
+   *
+   * @param preview
+   */
+  protected void setPreview(final Bitmap preview) {
+    ImageView view = getView();
+    if (view == null)
+      return;
+
+    if (!equals(view.getTag()))
+      return;
+
+    if (fadeIn && view.getAnimation() == null)
+      view.startAnimation(AnimationUtils.loadAnimation(view.getContext(),
+          android.R.anim.fade_in));
+    setImageBitmap(view, preview, pool);
+    previewShown = true;
+  }
+
+  /**
+   * Set decoded bitmap on view if this task is still bound to it
+   *
+   * @param result
+   */
+  protected void setResult(final Bitmap result) {
     ImageView view = getView();
     if (view == null)
       return;
@@ -96,12 +600,12 @@ public class ImageViewBitmapTask extends DecodeBitmapTask {
 
     view.setTag(null);
     if (result != null) {
-      if (fadeIn && view.getAnimation() == null)
+      if (fadeIn && !previewShown && view.getAnimation() == null)
         view.startAnimation(AnimationUtils.loadAnimation(view.getContext(),
             android.R.anim.fade_in));
-      view.setImageBitmap(result);
+      setImageBitmap(view, result, pool);
     } else {
-      view.setImageDrawable(null);
+      setImageBitmap(view, null, pool);
       view.clearAnimation();
     }
   }
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+/**
+ * Histogram of latencies in power of two buckets of microseconds
+ * <p>
+ * Bucket n holds latencies below 2^n microseconds that are not in a lower
+ * bucket, so percentiles are accurate to within a factor of two.
+ */
+public class LatencyHistogram {
+
+  private static final int BUCKETS = 32;
+
+  private final long[] counts = new long[BUCKETS];
+
+  private long count;
+
+  private long total;
+
+  private long max;
+
+  /**
+   * Get bucket of latency
+   *
+   * @param micros
+   * @return bucket index
+   */
+  private static int getBucket(final long micros) {
+    if (micros <= 0)
+      return 0;
+    return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+  }
+
+  /**
+   * Record latency
+   *
+   * @param nanos
+   * @return this histogram
+   */
+  public synchronized LatencyHistogram record(final long nanos) {
+    long micros = Math.max(0, nanos / 1000);
+    counts[getBucket(micros)]++;
+    count++;
+    total += micros;
+    max = Math.max(max, micros);
+    return this;
+  }
+
+  /**
+   * Get number of recorded latencies
+   *
+   * @return count
+   */
+  public synchronized long getCount() {
+    return count;
+  }
+
+  /**
+   * Get mean of recorded latencies
+   *
+   * @return mean in microseconds, 0 if none recorded
+   */
+  public synchronized long getMean() {
+    return count > 0 ? total / count : 0;
+  }
+
+  /**
+   * Get maximum recorded latency
+   *
+   * @return maximum in microseconds
+   */
+  public synchronized long getMax() {
+    return max;
+  }
+
+  /**
+   * Get upper bound of the bucket holding the given percentile
+   *
+   * @param percentile
+   *          between 0 and 100
+   * @return latency in microseconds, 0 if none recorded
+   */
+  public synchronized long getPercentile(final double percentile) {
+    if (count == 0)
+      return 0;
+
+    long rank = (long) Math.ceil(count * percentile / 100);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank)
+        return Math.min(max, (1L << i) - 1);
+    }
+    return max;
+  }
+
+  /**
+   * Remove all recorded latencies
+   *
+   * @return this histogram
+   */
+  public synchronized LatencyHistogram clear() {
+    for (int i = 0; i < BUCKETS; i++)
+      counts[i] = 0;
+    count = 0;
+    total = 0;
+    max = 0;
+    return this;
+  }
+}
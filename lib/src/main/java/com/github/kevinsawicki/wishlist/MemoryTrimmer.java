@@ -0,0 +1,254 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_COMPLETE;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_MODERATE;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+import static android.os.Build.VERSION.SDK_INT;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Trimmer of in-memory caches in response to memory pressure signalled to the
+ * application
+ * <p>
+ * Each registered cache is trimmed to a fraction of its maximum size that is
+ * configured per trim level. The fraction used for a level is the fraction of
+ * the highest configured level at or below it.
+ * <p>
+ * Listening for trim levels using {@link #register(Context)} requires API
+ * level 14 or above, on earlier versions {@link #onLowMemory()} should be
+ * called from {@link android.app.Activity#onLowMemory()}
+ */
+public class MemoryTrimmer {
+
+  /**
+   * Cache that can be trimmed to a fraction of its maximum size
+   */
+  public static interface Trimmable {
+
+    /**
+     * Trim to the given fraction of the maximum size
+     *
+     * @param fraction
+     *          between 0 and 1, 0 to remove everything
+     */
+    void trimToFraction(float fraction);
+  }
+
+  /**
+   * Level signalled while running when the device is beginning to run low on
+   * memory, added to {@link ComponentCallbacks2} in API level 16
+   */
+  public static final int TRIM_MEMORY_RUNNING_MODERATE = 5;
+
+  /**
+   * Level signalled while running when the device is running low on memory,
+   * added to {@link ComponentCallbacks2} in API level 16
+   */
+  public static final int TRIM_MEMORY_RUNNING_LOW = 10;
+
+  /**
+   * Level signalled while running when the device is running extremely low on
+   * memory, added to {@link ComponentCallbacks2} in API level 16
+   */
+  public static final int TRIM_MEMORY_RUNNING_CRITICAL = 15;
+
+  /**
+   * Typefaces loaded by {@link TypefaceUtils}, cleared when trimmed to any
+   * fraction below 1
+   */
+  public static final Trimmable TYPEFACES = new Trimmable() {
+
+    public void trimToFraction(final float fraction) {
+      if (fraction < 1)
+        TypefaceUtils.clearTypefaces();
+    }
+  };
+
+  /**
+   * Trim levels that fractions can be configured for in ascending order
+   */
+  private static final int[] LEVELS = new int[] {
+      TRIM_MEMORY_RUNNING_MODERATE, TRIM_MEMORY_RUNNING_LOW,
+      TRIM_MEMORY_RUNNING_CRITICAL, TRIM_MEMORY_UI_HIDDEN,
+      TRIM_MEMORY_BACKGROUND, TRIM_MEMORY_MODERATE, TRIM_MEMORY_COMPLETE };
+
+  /**
+   * Default fractions kept of each level in {@link #LEVELS}
+   */
+  private static final float[] DEFAULT_FRACTIONS = new float[] { 0.75F, 0.5F,
+      0.25F, 0.5F, 0.25F, 0F, 0F };
+
+  /**
+   * Fractions of typefaces kept, which are only cleared when the process is
+   * likely to be killed
+   */
+  private static final float[] TYPEFACE_FRACTIONS = new float[] { 1F, 1F, 1F,
+      1F, 1F, 0F, 0F };
+
+  private static MemoryTrimmer defaultTrimmer;
+
+  /**
+   * Get default trimmer with the {@link BitmapCache#getDefault()} cache, the
+   * {@link BitmapPool#getDefault()} pool and {@link #TYPEFACES} registered
+   *
+   * @return trimmer
+   */
+  public static synchronized MemoryTrimmer getDefault() {
+    if (defaultTrimmer == null) {
+      defaultTrimmer = new MemoryTrimmer();
+      defaultTrimmer.add(BitmapCache.getDefault());
+      defaultTrimmer.add(BitmapPool.getDefault());
+      defaultTrimmer.add(TYPEFACES, TYPEFACE_FRACTIONS);
+    }
+    return defaultTrimmer;
+  }
+
+  private static class Callbacks implements ComponentCallbacks2 {
+
+    private final MemoryTrimmer trimmer;
+
+    private Callbacks(final MemoryTrimmer trimmer) {
+      this.trimmer = trimmer;
+    }
+
+    public void onTrimMemory(final int level) {
+      trimmer.onTrimMemory(level);
+    }
+
+    public void onLowMemory() {
+      trimmer.onLowMemory();
+    }
+
+    public void onConfigurationChanged(final Configuration newConfig) {
+      // Configuration changes do not affect caches
+    }
+  }
+
+  private final Map<Trimmable, float[]> trimmables = new LinkedHashMap<Trimmable, float[]>();
+
+  /**
+   * Register cache trimmed using the default fractions
+   * <p>
+   * Caches are trimmed in the order they were added
+   *
+   * @param trimmable
+   * @return this trimmer
+   */
+  public MemoryTrimmer add(final Trimmable trimmable) {
+    return add(trimmable, DEFAULT_FRACTIONS);
+  }
+
+  private synchronized MemoryTrimmer add(final Trimmable trimmable,
+      final float[] fractions) {
+    trimmables.put(trimmable, fractions.clone());
+    return this;
+  }
+
+  /**
+   * Unregister cache
+   *
+   * @param trimmable
+   * @return this trimmer
+   */
+  public synchronized MemoryTrimmer remove(final Trimmable trimmable) {
+    trimmables.remove(trimmable);
+    return this;
+  }
+
+  /**
+   * Set fraction of its maximum size that a registered cache is trimmed to at
+   * the given level and above until the next configured level
+   *
+   * @param trimmable
+   * @param level
+   *          one of the TRIM_MEMORY_* constants of {@link ComponentCallbacks2}
+   *          or this class
+   * @param fraction
+   *          between 0 and 1, 0 to remove everything
+   * @return this trimmer
+   */
+  public synchronized MemoryTrimmer setTarget(final Trimmable trimmable,
+      final int level, final float fraction) {
+    float[] fractions = trimmables.get(trimmable);
+    if (fractions == null)
+      throw new IllegalArgumentException("Trimmable is not registered");
+    int index = getIndex(level);
+    if (index == -1)
+      throw new IllegalArgumentException("Unsupported trim level: " + level);
+    fractions[index] = Math.max(0, Math.min(1, fraction));
+    return this;
+  }
+
+  private static int getIndex(final int level) {
+    for (int i = LEVELS.length - 1; i >= 0; i--)
+      if (LEVELS[i] <= level)
+        return i;
+    return -1;
+  }
+
+  /**
+   * Trim registered caches for the given level
+   *
+   * @param level
+   *          one of the TRIM_MEMORY_* constants of {@link ComponentCallbacks2}
+   *          or this class
+   */
+  public void onTrimMemory(final int level) {
+    int index = getIndex(level);
+    if (index == -1)
+      return;
+
+    List<Entry<Trimmable, float[]>> entries;
+    synchronized (this) {
+      entries = new ArrayList<Entry<Trimmable, float[]>>(trimmables.entrySet());
+    }
+    for (Entry<Trimmable, float[]> entry : entries)
+      entry.getKey().trimToFraction(entry.getValue()[index]);
+  }
+
+  /**
+   * Trim registered caches as the most severe level
+   */
+  public void onLowMemory() {
+    onTrimMemory(TRIM_MEMORY_COMPLETE);
+  }
+
+  /**
+   * Listen for trim levels signalled to the given context's application
+   * <p>
+   * This method does nothing on API levels below 14
+   *
+   * @param context
+   * @return this trimmer
+   */
+  public MemoryTrimmer register(final Context context) {
+    if (SDK_INT >= 14)
+      context.getApplicationContext().registerComponentCallbacks(
+          new Callbacks(this));
+    return this;
+  }
+}
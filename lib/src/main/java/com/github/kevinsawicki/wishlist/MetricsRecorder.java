@@ -0,0 +1,169 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static com.github.kevinsawicki.wishlist.DecodeMetrics.CACHE_COUNT;
+import static com.github.kevinsawicki.wishlist.DecodeMetrics.STAGE_COUNT;
+
+/**
+ * Listener that aggregates decode events into latency histograms for each
+ * stage and counters
+ * <p>
+ * Register using {@link DecodeMetrics#setListener(DecodeMetrics.Listener)}
+ */
+public class MetricsRecorder implements DecodeMetrics.Listener {
+
+  private final LatencyHistogram[] stages = new LatencyHistogram[STAGE_COUNT];
+
+  private final long[] hits = new long[CACHE_COUNT];
+
+  private final long[] misses = new long[CACHE_COUNT];
+
+  private final long[] sampleSizes = new long[32];
+
+  private long decoded;
+
+  private long bytesRead;
+
+  private long byteCount;
+
+  private long cancelled;
+
+  /**
+   * Create recorder
+   */
+  public MetricsRecorder() {
+    for (int i = 0; i < STAGE_COUNT; i++)
+      stages[i] = new LatencyHistogram();
+  }
+
+  public void onStage(final int stage, final long nanos) {
+    stages[stage].record(nanos);
+  }
+
+  public synchronized void onLookup(final int cache, final boolean hit) {
+    if (hit)
+      hits[cache]++;
+    else
+      misses[cache]++;
+  }
+
+  public synchronized void onDecoded(final String key, final int sampleSize,
+      final long bytesRead, final int byteCount) {
+    decoded++;
+    if (bytesRead > 0)
+      this.bytesRead += bytesRead;
+    this.byteCount += byteCount;
+    sampleSizes[Math.min(sampleSizes.length - 1,
+        31 - Integer.numberOfLeadingZeros(Math.max(1, sampleSize)))]++;
+  }
+
+  public synchronized void onCancelled(final String key) {
+    cancelled++;
+  }
+
+  /**
+   * Get latency histogram of stage
+   *
+   * @param stage
+   *          one of the {@link DecodeMetrics} STAGE_* constants
+   * @return histogram
+   */
+  public LatencyHistogram getStage(final int stage) {
+    return stages[stage];
+  }
+
+  /**
+   * Get ratio of lookups of the given cache that were hits
+   *
+   * @param cache
+   *          one of the {@link DecodeMetrics} CACHE_* constants
+   * @return hit rate between 0 and 1, 0 if never looked up
+   */
+  public synchronized float getHitRate(final int cache) {
+    long lookups = hits[cache] + misses[cache];
+    return lookups > 0 ? (float) hits[cache] / lookups : 0;
+  }
+
+  /**
+   * Get number of decoded images
+   *
+   * @return count
+   */
+  public synchronized long getDecodedCount() {
+    return decoded;
+  }
+
+  /**
+   * Get number of images decoded with the given power of two sample size or
+   * with a sample size between it and the next power of two
+   *
+   * @param sampleSize
+   * @return count
+   */
+  public synchronized long getSampleSizeCount(final int sampleSize) {
+    return sampleSizes[Math.min(sampleSizes.length - 1,
+        31 - Integer.numberOfLeadingZeros(Math.max(1, sampleSize)))];
+  }
+
+  /**
+   * Get total encoded size of decoded sources whose size is known
+   *
+   * @return byte count
+   */
+  public synchronized long getBytesRead() {
+    return bytesRead;
+  }
+
+  /**
+   * Get total size of decoded bitmaps
+   *
+   * @return byte count
+   */
+  public synchronized long getDecodedByteCount() {
+    return byteCount;
+  }
+
+  /**
+   * Get number of cancelled tasks
+   *
+   * @return count
+   */
+  public synchronized long getCancelledCount() {
+    return cancelled;
+  }
+
+  /**
+   * Reset all histograms and counters
+   *
+   * @return this recorder
+   */
+  public synchronized MetricsRecorder clear() {
+    for (LatencyHistogram stage : stages)
+      stage.clear();
+    for (int i = 0; i < CACHE_COUNT; i++) {
+      hits[i] = 0;
+      misses[i] = 0;
+    }
+    for (int i = 0; i < sampleSizes.length; i++)
+      sampleSizes[i] = 0;
+    decoded = 0;
+    bytesRead = 0;
+    byteCount = 0;
+    cancelled = 0;
+    return this;
+  }
+}
@@ -27,6 +27,12 @@ import java.util.List;
 
 /**
  * Adapter for lists where only multiple view types are needed
+ * <p>
+ * Each change to the items notifies observers unless it is made between
+ * {@link #beginBatch()} and {@link #commitBatch()}, in which case observers are
+ * notified once when the batch is committed. Batches should be committed in a
+ * finally block so that an exception thrown while changing the items does not
+ * leave notifications muted.
  */
 public abstract class MultiTypeAdapter extends TypeAdapter {
 
@@ -55,6 +61,16 @@ public abstract class MultiTypeAdapter extends TypeAdapter {
 
   private final List<Item> items = new ArrayList<Item>();
 
+  /**
+   * Number of batches begun and not yet committed
+   */
+  private int batches;
+
+  /**
+   * Whether items changed during the current batch
+   */
+  private boolean changed;
+
   /**
    * Create adapter
    * 
@@ -102,10 +118,63 @@ public abstract class MultiTypeAdapter extends TypeAdapter {
   public MultiTypeAdapter clear() {
     items.clear();
 
-    notifyDataSetChanged();
+    itemsChanged();
     return this;
   }
 
+  /**
+   * Begin a batch of changes that notifies observers once when committed
+   * <p>
+   * Batches may be nested, observers are notified when the outermost batch is
+   * committed. Every call to this method must be followed by a call to
+   * {@link #commitBatch()} in a finally block, otherwise observers are never
+   * notified again if an exception is thrown before the batch is committed.
+   * 
+   * @return this adapter
+   */
+  public MultiTypeAdapter beginBatch() {
+    batches++;
+    return this;
+  }
+
+  /**
+   * Commit the current batch of changes, notifying observers if the items
+   * changed and this is the outermost batch
+   * 
+   * @return this adapter
+   */
+  public MultiTypeAdapter commitBatch() {
+    if (batches == 0)
+      throw new IllegalStateException("No batch has been begun");
+
+    batches--;
+    if (batches == 0 && changed) {
+      changed = false;
+      onItemsChanged();
+      notifyDataSetChanged();
+    }
+    return this;
+  }
+
+  /**
+   * Called once for each notification of changed items, before observers are
+   * notified
+   * <p>
+   * Sub-classes may override this method to update state derived from the
+   * items in the same pass
+   */
+  protected void onItemsChanged() {
+  }
+
+  private void itemsChanged() {
+    if (batches > 0)
+      changed = true;
+    else {
+      onItemsChanged();
+      notifyDataSetChanged();
+    }
+  }
+
   /**
    * Add item to adapter registered as the given type
    * 
@@ -116,7 +185,7 @@ public abstract class MultiTypeAdapter extends TypeAdapter {
   public MultiTypeAdapter addItem(final int type, final Object item) {
     items.add(new Item(type, item));
 
-    notifyDataSetChanged();
+    itemsChanged();
     return this;
   }
 
@@ -134,7 +203,7 @@ public abstract class MultiTypeAdapter extends TypeAdapter {
     for (Object item : items)
       this.items.add(new Item(type, item));
 
-    notifyDataSetChanged();
+    itemsChanged();
     return this;
   }
 
@@ -152,7 +221,7 @@ public abstract class MultiTypeAdapter extends TypeAdapter {
     for (Object item : items)
       this.items.add(new Item(type, item));
 
-    notifyDataSetChanged();
+    itemsChanged();
     return this;
   }
 
@@ -163,9 +232,9 @@ public abstract class MultiTypeAdapter extends TypeAdapter {
    * @return this adapter
    */
   public MultiTypeAdapter removeItem(final int position) {
-    if (position > 0 && position < items.size()
+    if (position >= 0 && position < items.size()
         && items.remove(position) != null)
-      notifyDataSetChanged();
+      itemsChanged();
     return this;
   }
 
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import android.graphics.Bitmap;
+
+import com.github.kevinsawicki.wishlist.DimensionIndex.Dimensions;
+
+import java.util.Arrays;
+
+/**
+ * Dominant colors of images computed from a coarse histogram of a small
+ * sample of their pixels
+ * <p>
+ * Colors are stored in a {@link DimensionIndex} alongside the dimensions of
+ * the image so that they are only computed once for each version of an image.
+ */
+public class Palette {
+
+  /**
+   * Size that images are sampled down to before counting colors
+   */
+  private static final int SAMPLE_SIZE = 64;
+
+  /**
+   * Minimum sample size used when decoding images for their colors
+   */
+  private static final int MIN_SAMPLE_SIZE = 8;
+
+  /**
+   * Minimum squared distance between returned colors
+   */
+  private static final int MIN_DISTANCE = 48 * 48;
+
+  /**
+   * Get dominant colors of pixels
+   * <p>
+   * Pixels are counted in buckets of 4 bits per channel and the average color
+   * of the fullest buckets is returned, skipping buckets close to a color
+   * already returned. Mostly transparent pixels are ignored.
+   *
+   * @param pixels
+   * @param length
+   *          number of pixels to count
+   * @param maxColors
+   * @return colors most dominant first, empty if all pixels are transparent
+   */
+  public static int[] getDominant(final int[] pixels, final int length,
+      final int maxColors) {
+    int[] counts = new int[4096];
+    int[] reds = new int[4096];
+    int[] greens = new int[4096];
+    int[] blues = new int[4096];
+    for (int i = 0; i < length; i++) {
+      int pixel = pixels[i];
+      if (pixel >>> 24 < 0x80)
+        continue;
+      int red = (pixel >> 16) & 0xFF;
+      int green = (pixel >> 8) & 0xFF;
+      int blue = pixel & 0xFF;
+      int bucket = (red >> 4) << 8 | (green >> 4) << 4 | blue >> 4;
+      counts[bucket]++;
+      reds[bucket] += red;
+      greens[bucket] += green;
+      blues[bucket] += blue;
+    }
+
+    // Sort buckets by count with the bucket index in the low bits
+    long[] sorted = new long[4096];
+    int filled = 0;
+    for (int bucket = 0; bucket < 4096; bucket++)
+      if (counts[bucket] > 0)
+        sorted[filled++] = (long) counts[bucket] << 12 | bucket;
+    Arrays.sort(sorted, 0, filled);
+
+    int[] colors = new int[Math.min(maxColors, filled)];
+    int found = 0;
+    for (int i = filled - 1; i >= 0 && found < colors.length; i--) {
+      int bucket = (int) (sorted[i] & 0xFFF);
+      int count = counts[bucket];
+      int color = 0xFF000000 | (reds[bucket] / count) << 16
+          | (greens[bucket] / count) << 8 | blues[bucket] / count;
+      if (isDistinct(color, colors, found))
+        colors[found++] = color;
+    }
+    if (found == colors.length)
+      return colors;
+
+    int[] distinct = new int[found];
+    System.arraycopy(colors, 0, distinct, 0, found);
+    return distinct;
+  }
+
+  private static boolean isDistinct(final int color, final int[] colors,
+      final int count) {
+    for (int i = 0; i < count; i++) {
+      int red = ((color >> 16) & 0xFF) - ((colors[i] >> 16) & 0xFF);
+      int green = ((color >> 8) & 0xFF) - ((colors[i] >> 8) & 0xFF);
+      int blue = (color & 0xFF) - (colors[i] & 0xFF);
+      if (red * red + green * green + blue * blue < MIN_DISTANCE)
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Get dominant colors of a grid of at most 64 by 64 pixels of the bitmap
+   *
+   * @param bitmap
+   * @param maxColors
+   * @return colors most dominant first
+   */
+  public static int[] getDominant(final Bitmap bitmap, final int maxColors) {
+    final int width = bitmap.getWidth();
+    final int height = bitmap.getHeight();
+    final int stepX = Math.max(1, width / SAMPLE_SIZE);
+    final int stepY = Math.max(1, height / SAMPLE_SIZE);
+    int[] row = new int[width];
+    int[] samples = new int[((width + stepX - 1) / stepX)
+        * ((height + stepY - 1) / stepY)];
+    int sampled = 0;
+    for (int y = 0; y < height; y += stepY) {
+      bitmap.getPixels(row, 0, width, 0, y, width, 1);
+      for (int x = 0; x < width; x += stepX)
+        samples[sampled++] = row[x];
+    }
+    return getDominant(samples, sampled, maxColors);
+  }
+
+  /**
+   * Get dominant colors of the image from the index or by decoding the image
+   * sampled down to a few dozen pixels on each side
+   * <p>
+   * Decoded colors are added to the index, this method must not be called on
+   * the UI thread
+   *
+   * @param source
+   * @param index
+   *          index to read and store colors in, null to always decode
+   * @param maxColors
+   * @return colors most dominant first or null if the image could not be
+   *         decoded
+   */
+  public static int[] load(final BitmapSource source,
+      final DimensionIndex index, final int maxColors) {
+    final String key = source.getKey();
+    final long modified = source.lastModified();
+    Dimensions known = null;
+    if (index != null && key != null) {
+      known = index.get(key, modified);
+      if (known != null && known.colors != null)
+        return known.colors;
+    }
+
+    ImageDecoder<Bitmap> decoder = BitmapFactoryDecoder.getDefault();
+    DecodeOptions<Bitmap> options = new DecodeOptions<Bitmap>();
+    if (known != null) {
+      options.outWidth = known.width;
+      options.outHeight = known.height;
+    } else
+      decoder.decodeBounds(source, options);
+    final int width = options.outWidth;
+    final int height = options.outHeight;
+    if (width <= 0 || height <= 0)
+      return null;
+
+    options.sampleSize = Math.max(MIN_SAMPLE_SIZE, SampleSize.getPowerOfTwo(
+        width, height, SAMPLE_SIZE, SAMPLE_SIZE));
+    Bitmap bitmap = decoder.decode(source, options);
+    if (bitmap == null)
+      return null;
+
+    int[] colors = getDominant(bitmap, maxColors);
+    bitmap.recycle();
+    if (index != null && key != null)
+      index.put(key, new Dimensions(width, height, modified, colors));
+    return colors;
+  }
+
+  /**
+   * Get the most dominant color of the image with the given key from the
+   * index without checking whether the image has changed
+   * <p>
+   * This method never does I/O and can be called on the UI thread, colors are
+   * only returned once the index has been loaded
+   *
+   * @param index
+   * @param key
+   * @param defaultColor
+   * @return color or default color if not indexed
+   */
+  public static int getPlaceholder(final DimensionIndex index,
+      final String key, final int defaultColor) {
+    if (index == null || key == null)
+      return defaultColor;
+    Dimensions dimensions = index.peek(key);
+    if (dimensions == null || dimensions.colors == null
+        || dimensions.colors.length == 0)
+      return defaultColor;
+    return dimensions.colors[0];
+  }
+
+  private Palette() {
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static android.widget.AbsListView.OnScrollListener.SCROLL_STATE_FLING;
+import android.widget.AbsListView;
+import android.widget.AbsListView.OnScrollListener;
+
+/**
+ * Scroll listener that pauses a {@link DecodeExecutor} while the list is
+ * flinging and resumes it once the list is touched or comes to rest
+ * <p>
+ * Images bound while paused are decoded on resume only if their view is still
+ * bound to them and attached to a window.
+ */
+public class PauseOnFlingListener implements OnScrollListener {
+
+  private final DecodeExecutor executor;
+
+  private final OnScrollListener delegate;
+
+  /**
+   * Create listener pausing the {@link DecodeExecutor#getDefault()} executor
+   */
+  public PauseOnFlingListener() {
+    this(DecodeExecutor.getDefault(), null);
+  }
+
+  /**
+   * Create listener pausing the {@link DecodeExecutor#getDefault()} executor
+   * and forwarding all events to the given listener
+   *
+   * @param delegate
+   */
+  public PauseOnFlingListener(final OnScrollListener delegate) {
+    this(DecodeExecutor.getDefault(), delegate);
+  }
+
+  /**
+   * Create listener pausing the given executor and forwarding all events to
+   * the given listener
+   *
+   * @param executor
+   * @param delegate
+   *          listener to forward events to, may be null
+   */
+  public PauseOnFlingListener(final DecodeExecutor executor,
+      final OnScrollListener delegate) {
+    this.executor = executor;
+    this.delegate = delegate;
+  }
+
+  public void onScrollStateChanged(final AbsListView view,
+      final int scrollState) {
+    if (scrollState == SCROLL_STATE_FLING)
+      executor.pause();
+    else
+      executor.resume();
+
+    if (delegate != null)
+      delegate.onScrollStateChanged(view, scrollState);
+  }
+
+  public void onScroll(final AbsListView view, final int firstVisibleItem,
+      final int visibleItemCount, final int totalItemCount) {
+    if (delegate != null)
+      delegate.onScroll(view, firstVisibleItem, visibleItemCount,
+          totalItemCount);
+  }
+}
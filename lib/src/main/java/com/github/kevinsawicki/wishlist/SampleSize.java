@@ -0,0 +1,124 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+/**
+ * Helpers for choosing the sample size and final size of decoded images
+ */
+public class SampleSize {
+
+  /**
+   * Get sample size by rounding the ratio of the image size to the maximum
+   * size
+   * <p>
+   * Images decoded with this sample size may be larger than the maximum size
+   *
+   * @param width
+   * @param height
+   * @param maxWidth
+   * @param maxHeight
+   * @return sample size
+   */
+  public static int getRounded(final int width, final int height,
+      final int maxWidth, final int maxHeight) {
+    if (width <= maxWidth && height <= maxHeight)
+      return 1;
+
+    return Math.max(Math.round((float) height / (float) maxHeight),
+        Math.round((float) width / (float) maxWidth));
+  }
+
+  /**
+   * Get scale that fits an image of the given size within the maximum size
+   * while keeping its aspect ratio
+   *
+   * @param width
+   * @param height
+   * @param maxWidth
+   * @param maxHeight
+   * @return scale, never greater than 1
+   */
+  public static float getScale(final int width, final int height,
+      final int maxWidth, final int maxHeight) {
+    return Math.min(1F, Math.min((float) maxWidth / width, (float) maxHeight
+        / height));
+  }
+
+  /**
+   * Get width of an image of the given size fit within the maximum size
+   *
+   * @param width
+   * @param height
+   * @param maxWidth
+   * @param maxHeight
+   * @return target width
+   */
+  public static int getTargetWidth(final int width, final int height,
+      final int maxWidth, final int maxHeight) {
+    return Math.max(1,
+        (int) (width * getScale(width, height, maxWidth, maxHeight)));
+  }
+
+  /**
+   * Get height of an image of the given size fit within the maximum size
+   *
+   * @param width
+   * @param height
+   * @param maxWidth
+   * @param maxHeight
+   * @return target height
+   */
+  public static int getTargetHeight(final int width, final int height,
+      final int maxWidth, final int maxHeight) {
+    return Math.max(1,
+        (int) (height * getScale(width, height, maxWidth, maxHeight)));
+  }
+
+  /**
+   * Get largest power of two sample size that decodes an image to a size at
+   * or above the size that fits within the maximum size
+   *
+   * @param width
+   * @param height
+   * @param maxWidth
+   * @param maxHeight
+   * @return sample size
+   */
+  public static int getPowerOfTwo(final int width, final int height,
+      final int maxWidth, final int maxHeight) {
+    int targetWidth = getTargetWidth(width, height, maxWidth, maxHeight);
+    int targetHeight = getTargetHeight(width, height, maxWidth, maxHeight);
+    int sampleSize = 1;
+    while (width / (sampleSize * 2) >= targetWidth
+        && height / (sampleSize * 2) >= targetHeight)
+      sampleSize *= 2;
+    return sampleSize;
+  }
+
+  /**
+   * Get size of a dimension decoded with the given sample size
+   *
+   * @param size
+   * @param sampleSize
+   * @return sampled size
+   */
+  public static int getSampled(final int size, final int sampleSize) {
+    return (size + sampleSize - 1) / sampleSize;
+  }
+
+  private SampleSize() {
+  }
+}
@@ -20,14 +20,31 @@ import android.content.Context;
 import android.view.LayoutInflater;
 import android.widget.SectionIndexer;
 
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * Type adapter with section indexing according to English alphabet
+ * <p>
+ * Sections added within a batch are indexed as they are added and the index is
+ * rebuilt from the items in the same pass that notifies observers when items
+ * have been removed.
  */
 public abstract class SectionMultiTypeAdapter extends MultiTypeAdapter
     implements SectionIndexer {
 
   private final SectionFinder sections = new SectionFinder();
 
+  /**
+   * Types that section items have been added as
+   */
+  private final Set<Integer> sectionTypes = new HashSet<Integer>();
+
+  /**
+   * Whether items were removed since the section index was last built
+   */
+  private boolean stale;
+
   /**
    * @param activity
    */
@@ -52,10 +69,40 @@ public abstract class SectionMultiTypeAdapter extends MultiTypeAdapter
   @Override
   public MultiTypeAdapter clear() {
     sections.clear();
+    stale = false;
 
     return super.clear();
   }
 
+  @Override
+  public MultiTypeAdapter removeItem(final int position) {
+    stale = true;
+
+    return super.removeItem(position);
+  }
+
+  @Override
+  protected void onItemsChanged() {
+    super.onItemsChanged();
+
+    if (!stale)
+      return;
+
+    stale = false;
+    sections.clear();
+    Object section = null;
+    int count = getCount();
+    for (int i = 0; i < count; i++) {
+      Object item = getItem(i);
+      if (sectionTypes.contains(getItemViewType(i)))
+        section = item;
+      if (section != null)
+        sections.add(section, item);
+      else
+        sections.index(item);
+    }
+  }
+
   /**
    * Add items mapped to given letter
    *
@@ -67,10 +114,13 @@ public abstract class SectionMultiTypeAdapter extends MultiTypeAdapter
    */
   public SectionMultiTypeAdapter addItems(final int sectionType,
       final Object section, final int itemType, final Object[] items) {
+    sectionTypes.add(sectionType);
     sections.add(section, section).add(section, items);
 
+    beginBatch();
     super.addItem(sectionType, section);
     super.addItems(itemType, items);
+    commitBatch();
 
     return this;
   }
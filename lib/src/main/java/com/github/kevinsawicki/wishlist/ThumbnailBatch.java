@@ -0,0 +1,291 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Batch of images decoded to thumbnails in parallel
+ * <p>
+ * Only a fixed number of images are decoding at any time and decoded bitmaps
+ * are not referenced once passed to the {@link Listener} so the memory used is
+ * bounded regardless of the number of images in the batch. Images are decoded
+ * on the {@link DecodeExecutor#getDefault()} executor with
+ * {@link DecodeExecutor#PRIORITY_LOW} priority so that images of visible views
+ * are decoded first.
+ */
+public class ThumbnailBatch {
+
+  /**
+   * Listener of batch results
+   * <p>
+   * All methods are called on a decoding thread
+   */
+  public static interface Listener {
+
+    /**
+     * Image was decoded
+     *
+     * @param index
+     *          of the image in the batch
+     * @param source
+     * @param bitmap
+     */
+    void onThumbnail(int index, BitmapSource source, Bitmap bitmap);
+
+    /**
+     * Image could not be decoded
+     *
+     * @param index
+     *          of the image in the batch
+     * @param source
+     * @param error
+     *          thrown while decoding, null if the image was missing or
+     *          undecodable
+     */
+    void onFailure(int index, BitmapSource source, Throwable error);
+
+    /**
+     * Images were completed, either successfully or not
+     *
+     * @param completed
+     * @param total
+     */
+    void onProgress(int completed, int total);
+  }
+
+  /**
+   * Create batch of images at paths
+   *
+   * @param maxWidth
+   * @param maxHeight
+   * @param paths
+   * @return batch
+   */
+  public static ThumbnailBatch fromPaths(final int maxWidth,
+      final int maxHeight, final Collection<String> paths) {
+    List<BitmapSource> sources = new ArrayList<BitmapSource>(paths.size());
+    for (String path : paths)
+      sources.add(BitmapSource.fromFile(path));
+    return new ThumbnailBatch(maxWidth, maxHeight, sources);
+  }
+
+  private final int maxWidth;
+
+  private final int maxHeight;
+
+  private final List<BitmapSource> sources;
+
+  private final Set<BitmapLoader> decoding = new HashSet<BitmapLoader>();
+
+  private int parallelism = Runtime.getRuntime().availableProcessors();
+
+  private ThumbnailCache thumbnails;
+
+  private DimensionIndex dimensions = DimensionIndex.getDefault();
+
+  private Listener listener;
+
+  private volatile boolean cancelled;
+
+  /**
+   * Create batch of images
+   *
+   * @param maxWidth
+   * @param maxHeight
+   * @param sources
+   */
+  public ThumbnailBatch(final int maxWidth, final int maxHeight,
+      final List<BitmapSource> sources) {
+    this.maxWidth = maxWidth;
+    this.maxHeight = maxHeight;
+    this.sources = new ArrayList<BitmapSource>(sources);
+  }
+
+  /**
+   * Set maximum number of images decoding at the same time
+   *
+   * @param parallelism
+   * @return this batch
+   */
+  public ThumbnailBatch setParallelism(final int parallelism) {
+    this.parallelism = Math.max(1, parallelism);
+    return this;
+  }
+
+  /**
+   * Set disk cache to read existing thumbnails from and to write decoded
+   * thumbnails to
+   *
+   * @param thumbnails
+   *          cache or null to not use a thumbnail cache
+   * @return this batch
+   */
+  public ThumbnailBatch setThumbnailCache(final ThumbnailCache thumbnails) {
+    this.thumbnails = thumbnails;
+    return this;
+  }
+
+  /**
+   * Set index to read and store image dimensions in
+   *
+   * @param dimensions
+   *          index or null to always decode bounds
+   * @return this batch
+   */
+  public ThumbnailBatch setDimensionIndex(final DimensionIndex dimensions) {
+    this.dimensions = dimensions;
+    return this;
+  }
+
+  /**
+   * Set listener of results
+   *
+   * @param listener
+   * @return this batch
+   */
+  public ThumbnailBatch setListener(final Listener listener) {
+    this.listener = listener;
+    return this;
+  }
+
+  /**
+   * Cancel images that have not been decoded yet
+   */
+  public void cancel() {
+    cancelled = true;
+    List<BitmapLoader> loaders;
+    synchronized (decoding) {
+      loaders = new ArrayList<BitmapLoader>(decoding);
+    }
+    for (BitmapLoader loader : loaders)
+      loader.cancel();
+  }
+
+  /**
+   * Decode all images in the batch
+   * <p>
+   * This method blocks until all images are completed or the batch is
+   * cancelled and must not be called on the UI thread
+   *
+   * @return number of images decoded
+   * @throws InterruptedException
+   */
+  public int run() throws InterruptedException {
+    final int total = sources.size();
+    final Semaphore permits = new Semaphore(parallelism);
+    final AtomicInteger completed = new AtomicInteger();
+    final AtomicInteger decoded = new AtomicInteger();
+    DecodeExecutor executor = DecodeExecutor.getDefault();
+    for (int i = 0; i < total && !cancelled; i++) {
+      // Wait for a running image to complete before starting another one
+      permits.acquire();
+      if (cancelled) {
+        permits.release();
+        break;
+      }
+
+      final int index = i;
+      final BitmapSource source = sources.get(i);
+      executor.execute(new Runnable() {
+
+        public void run() {
+          try {
+            if (!cancelled && complete(index, source))
+              decoded.incrementAndGet();
+          } finally {
+            // Notify before releasing so progress is complete once run returns
+            try {
+              if (listener != null)
+                listener.onProgress(completed.incrementAndGet(), total);
+            } finally {
+              permits.release();
+            }
+          }
+        }
+      }, DecodeExecutor.PRIORITY_LOW);
+    }
+
+    // Wait for running images by taking back every permit
+    permits.acquire(parallelism);
+    permits.release(parallelism);
+    return decoded.get();
+  }
+
+  /**
+   * Load the thumbnail of the image at the given index in the batch
+   * <p>
+   * This method is called on a decoding thread and returns null once the
+   * batch is cancelled. Images that cannot be decoded are never deleted.
+   *
+   * @param index
+   * @param source
+   * @return bitmap or null if the image was missing, undecodable, or cancelled
+   */
+  protected Bitmap load(final int index, final BitmapSource source) {
+    BitmapLoader loader = new BitmapLoader(maxWidth, maxHeight, source)
+        .setThumbnailCache(thumbnails).setDimensionIndex(dimensions);
+    synchronized (decoding) {
+      decoding.add(loader);
+    }
+    try {
+      // Cancelling may have copied the decoding loaders before this one was
+      // added
+      if (cancelled)
+        return null;
+      Bitmap bitmap = loader.load();
+      return loader.isCancelled() ? null : bitmap;
+    } finally {
+      synchronized (decoding) {
+        decoding.remove(loader);
+      }
+    }
+  }
+
+  private boolean complete(final int index, final BitmapSource source) {
+    Bitmap bitmap;
+    try {
+      bitmap = load(index, source);
+    } catch (RuntimeException e) {
+      if (listener != null)
+        listener.onFailure(index, source, e);
+      return false;
+    } catch (OutOfMemoryError e) {
+      if (listener != null)
+        listener.onFailure(index, source, e);
+      return false;
+    }
+
+    if (cancelled)
+      return false;
+    if (bitmap == null) {
+      if (listener != null)
+        listener.onFailure(index, source, null);
+      return false;
+    }
+    if (listener != null)
+      listener.onThumbnail(index, source, bitmap);
+    return true;
+  }
+}
@@ -0,0 +1,398 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static android.graphics.Bitmap.CompressFormat.JPEG;
+import static android.graphics.Bitmap.CompressFormat.PNG;
+import static android.graphics.Bitmap.Config.ARGB_8888;
+import static android.graphics.Bitmap.Config.RGB_565;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Disk cache of downsampled bitmaps keyed by source path, source modification
+ * time, target size, and decoding mode
+ * <p>
+ * Least recently used thumbnails are deleted once the total size of the cache
+ * directory exceeds the maximum size.
+ */
+public class ThumbnailCache {
+
+  private static final String TAG = "ThumbnailCache";
+
+  private static final String SUFFIX_TEMP = ".tmp";
+
+  private static final String MIME_JPEG = "image/jpeg";
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private static final Comparator<File> OLDEST_FIRST = new Comparator<File>() {
+
+    public int compare(final File lhs, final File rhs) {
+      long lhsModified = lhs.lastModified();
+      long rhsModified = rhs.lastModified();
+      if (lhsModified < rhsModified)
+        return -1;
+      if (lhsModified > rhsModified)
+        return 1;
+      return 0;
+    }
+  };
+
+  private static ThumbnailCache defaultCache;
+
+  /**
+   * Get default cache used by new {@link ImageViewBitmapTask} instances
+   *
+   * @return cache or null if none has been set
+   */
+  public static synchronized ThumbnailCache getDefault() {
+    return defaultCache;
+  }
+
+  /**
+   * Set default cache used by new {@link ImageViewBitmapTask} instances
+   *
+   * @param cache
+   */
+  public static synchronized void setDefault(final ThumbnailCache cache) {
+    defaultCache = cache;
+  }
+
+  private final File directory;
+
+  private final long maxSize;
+
+  private final Set<File> writing = new HashSet<File>();
+
+  private long size = -1;
+
+  /**
+   * Create cache in a thumbnails directory under the application cache
+   * directory
+   *
+   * @param context
+   * @param maxSize
+   */
+  public ThumbnailCache(final Context context, final long maxSize) {
+    this(new File(context.getCacheDir(), "thumbnails"), maxSize);
+  }
+
+  /**
+   * Create cache storing at most the given number of bytes in the given
+   * directory
+   *
+   * @param directory
+   * @param maxSize
+   */
+  public ThumbnailCache(final File directory, final long maxSize) {
+    this.directory = directory;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Get file that a thumbnail of the given source is stored in
+   *
+   * @param source
+   * @param maxWidth
+   * @param maxHeight
+   * @param mode
+   *          combination of the {@link BitmapCache} mode flags
+   * @return file or null if the source is not cacheable
+   */
+  protected File getFile(final BitmapSource source, final int maxWidth,
+      final int maxHeight, final int mode) {
+    String key = source.getKey();
+    if (key == null)
+      return null;
+
+    key = BitmapCache.getKey(key, maxWidth, maxHeight, mode) + '#'
+        + source.lastModified();
+    return new File(directory, digest(key));
+  }
+
+  static String digest(final String key) {
+    byte[] hash;
+    try {
+      hash = MessageDigest.getInstance("MD5").digest(key.getBytes());
+    } catch (NoSuchAlgorithmException e) {
+      return Integer.toHexString(key.hashCode());
+    }
+    char[] hex = new char[hash.length * 2];
+    for (int i = 0; i < hash.length; i++) {
+      hex[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+      hex[i * 2 + 1] = HEX[hash[i] & 0xF];
+    }
+    return new String(hex);
+  }
+
+  /**
+   * Get thumbnail of path decoded to the given maximum width and height
+   *
+   * @param path
+   * @param maxWidth
+   * @param maxHeight
+   * @return bitmap or null if not cached
+   */
+  public Bitmap get(final String path, final int maxWidth, final int maxHeight) {
+    return get(BitmapSource.fromFile(path), maxWidth, maxHeight);
+  }
+
+  /**
+   * Get thumbnail of source decoded to the given maximum width and height
+   *
+   * @param source
+   * @param maxWidth
+   * @param maxHeight
+   * @return bitmap or null if not cached
+   */
+  public Bitmap get(final BitmapSource source, final int maxWidth,
+      final int maxHeight) {
+    return get(source, maxWidth, maxHeight, 0, null);
+  }
+
+  /**
+   * Get thumbnail of source decoded to the given maximum width and height in
+   * the given mode
+   * <p>
+   * Thumbnails stored as JPEG are opaque and are decoded using RGB_565 when
+   * the mode includes {@link BitmapCache#MODE_RGB_565}
+   *
+   * @param source
+   * @param maxWidth
+   * @param maxHeight
+   * @param mode
+   *          combination of the {@link BitmapCache} mode flags
+   * @param pool
+   *          pool of bitmaps to decode into, null to always create a new
+   *          bitmap
+   * @return bitmap or null if not cached
+   */
+  public Bitmap get(final BitmapSource source, final int maxWidth,
+      final int maxHeight, final int mode, final BitmapPool pool) {
+    File file = getFile(source, maxWidth, maxHeight, mode);
+    if (file == null || !file.exists())
+      return null;
+
+    Bitmap bitmap = decode(BitmapSource.fromFile(file.getPath()), mode, pool);
+    if (bitmap != null)
+      file.setLastModified(System.currentTimeMillis());
+    else
+      remove(file);
+    return bitmap;
+  }
+
+  private static Bitmap decode(final BitmapSource source, final int mode,
+      final BitmapPool pool) {
+    ImageDecoder<Bitmap> decoder = BitmapFactoryDecoder.getDefault();
+    DecodeOptions<Bitmap> options = new DecodeOptions<Bitmap>();
+    decoder.decodeBounds(source, options);
+    final int width = options.outWidth;
+    final int height = options.outHeight;
+    if (width <= 0 || height <= 0)
+      return null;
+
+    options.preferRgb565 = (mode & BitmapCache.MODE_RGB_565) != 0
+        && MIME_JPEG.equals(options.outMimeType);
+    Bitmap reused = null;
+    if (pool != null && BitmapPool.isSupported()) {
+      options.mutable = true;
+      reused = pool.get(width, height, options.preferRgb565 ? RGB_565
+          : ARGB_8888);
+      options.reuse = reused;
+    }
+    Bitmap bitmap = decoder.decode(source, options);
+    if (reused != null && bitmap != reused)
+      pool.put(reused);
+    return bitmap;
+  }
+
+  /**
+   * Store thumbnail of path decoded to the given maximum width and height
+   *
+   * @param path
+   * @param maxWidth
+   * @param maxHeight
+   * @param bitmap
+   * @return true if stored, false otherwise
+   */
+  public boolean put(final String path, final int maxWidth,
+      final int maxHeight, final Bitmap bitmap) {
+    return put(BitmapSource.fromFile(path), maxWidth, maxHeight, bitmap);
+  }
+
+  /**
+   * Store thumbnail of source decoded to the given maximum width and height
+   *
+   * @param source
+   * @param maxWidth
+   * @param maxHeight
+   * @param bitmap
+   * @return true if stored, false otherwise
+   */
+  public boolean put(final BitmapSource source, final int maxWidth,
+      final int maxHeight, final Bitmap bitmap) {
+    return put(source, maxWidth, maxHeight, 0, bitmap);
+  }
+
+  /**
+   * Store thumbnail of source decoded to the given maximum width and height in
+   * the given mode
+   *
+   * @param source
+   * @param maxWidth
+   * @param maxHeight
+   * @param mode
+   *          combination of the {@link BitmapCache} mode flags
+   * @param bitmap
+   * @return true if stored, false otherwise
+   */
+  public boolean put(final BitmapSource source, final int maxWidth,
+      final int maxHeight, final int mode, final Bitmap bitmap) {
+    File file = getFile(source, maxWidth, maxHeight, mode);
+    if (file == null)
+      return false;
+    if (!directory.isDirectory() && !directory.mkdirs())
+      return false;
+
+    File temp;
+    synchronized (this) {
+      try {
+        // Concurrent writes of the same thumbnail each use their own file
+        temp = File.createTempFile(file.getName(), SUFFIX_TEMP, directory);
+      } catch (IOException e) {
+        Log.d(TAG, "Creating thumbnail of " + source.getKey() + " failed", e);
+        return false;
+      }
+      writing.add(temp);
+    }
+    boolean written = false;
+    OutputStream output = null;
+    try {
+      output = new BufferedOutputStream(new FileOutputStream(temp));
+      if (bitmap.hasAlpha())
+        written = bitmap.compress(PNG, 100, output);
+      else
+        written = bitmap.compress(JPEG, 90, output);
+    } catch (IOException e) {
+      Log.d(TAG, "Writing thumbnail of " + source.getKey() + " failed", e);
+    } finally {
+      if (output != null)
+        try {
+          output.close();
+        } catch (IOException e) {
+          written = false;
+        }
+    }
+
+    synchronized (this) {
+      writing.remove(temp);
+      long previous = file.length();
+      if (!written || !temp.renameTo(file)) {
+        temp.delete();
+        return false;
+      }
+      if (size != -1)
+        size += file.length() - previous;
+    }
+    trim(maxSize);
+    return true;
+  }
+
+  private synchronized void remove(final File file) {
+    long length = file.length();
+    if (file.delete() && size != -1)
+      size -= length;
+  }
+
+  /**
+   * Delete least recently used thumbnails until the total size of the cache
+   * is at or below the given size
+   *
+   * @param targetSize
+   * @return this cache
+   */
+  public synchronized ThumbnailCache trim(final long targetSize) {
+    if (getSize() <= targetSize)
+      return this;
+
+    File[] files = directory.listFiles();
+    if (files == null)
+      return this;
+
+    Arrays.sort(files, OLDEST_FIRST);
+    for (File file : files) {
+      if (size <= targetSize)
+        break;
+      if (!file.getName().endsWith(SUFFIX_TEMP))
+        remove(file);
+    }
+    return this;
+  }
+
+  /**
+   * Delete all thumbnails
+   *
+   * @return this cache
+   */
+  public ThumbnailCache clear() {
+    return trim(0);
+  }
+
+  /**
+   * Get total size of all thumbnails stored
+   * <p>
+   * Partially written thumbnails left behind by a previous process are
+   * deleted the first time the size is computed
+   *
+   * @return size in bytes
+   */
+  public synchronized long getSize() {
+    if (size == -1) {
+      size = 0;
+      File[] files = directory.listFiles();
+      if (files != null)
+        for (File file : files)
+          if (!file.getName().endsWith(SUFFIX_TEMP))
+            size += file.length();
+          else if (!writing.contains(file))
+            file.delete();
+    }
+    return size;
+  }
+
+  /**
+   * Get maximum size of all thumbnails stored
+   *
+   * @return maximum size in bytes
+   */
+  public long getMaxSize() {
+    return maxSize;
+  }
+}
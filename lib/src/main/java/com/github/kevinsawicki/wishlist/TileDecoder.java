@@ -0,0 +1,420 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory.Options;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.DisplayMetrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Decoder of the tiles of a large image that intersect a viewport
+ * <p>
+ * Tiles are decoded in the background at the sample size needed for the
+ * current zoom level and are kept in a cache sized relative to the screen
+ * instead of the image. Tiles that leave the viewport before they are decoded
+ * are never decoded.
+ * <p>
+ * This class requires API level 10 or above
+ */
+public class TileDecoder {
+
+  /**
+   * Callback for tiles decoded in the background
+   */
+  public static interface TileCallback {
+
+    /**
+     * Tile intersecting the current viewport is available
+     * <p>
+     * This method is always called on the UI thread
+     *
+     * @param tile
+     */
+    void onTileDecoded(Tile tile);
+  }
+
+  /**
+   * Decoded region of the image
+   */
+  public static class Tile {
+
+    /**
+     * Region of the image covered by this tile in image coordinates
+     */
+    public final Rect region;
+
+    /**
+     * Sample size the region was decoded at
+     */
+    public final int sampleSize;
+
+    /**
+     * Decoded bitmap
+     */
+    public final Bitmap bitmap;
+
+    private Tile(final Rect region, final int sampleSize, final Bitmap bitmap) {
+      this.region = region;
+      this.sampleSize = sampleSize;
+      this.bitmap = bitmap;
+    }
+  }
+
+  /**
+   * Queue of the tiles wanted for the current viewport
+   * <p>
+   * Tiles that are already decoding when the viewport changes are not queued
+   * again and tiles that leave the viewport before they start decoding are
+   * dropped. Instances are not thread-safe.
+   *
+   * @param <R>
+   *          type of tile request
+   */
+  static class TileQueue<R> {
+
+    private final LinkedHashMap<String, R> pending = new LinkedHashMap<String, R>();
+
+    private final Set<String> wanted = new HashSet<String>();
+
+    private final Set<String> decoding = new HashSet<String>();
+
+    /**
+     * Drop all tiles that have not started decoding and stop wanting the
+     * results of tiles that are decoding
+     */
+    void clear() {
+      pending.clear();
+      wanted.clear();
+    }
+
+    /**
+     * Want tile with key, queueing the request unless the tile is already
+     * decoding
+     *
+     * @param key
+     * @param request
+     * @return true if queued, false if already decoding
+     */
+    boolean add(final String key, final R request) {
+      wanted.add(key);
+      if (decoding.contains(key))
+        return false;
+      pending.put(key, request);
+      return true;
+    }
+
+    /**
+     * Is any tile waiting to be decoded?
+     *
+     * @return true if empty, false otherwise
+     */
+    boolean isEmpty() {
+      return pending.isEmpty();
+    }
+
+    /**
+     * Take the next tile to decode and mark it as decoding
+     *
+     * @return request or null if none are queued
+     */
+    R poll() {
+      Iterator<Entry<String, R>> entries = pending.entrySet().iterator();
+      if (!entries.hasNext())
+        return null;
+
+      Entry<String, R> next = entries.next();
+      entries.remove();
+      decoding.add(next.getKey());
+      return next.getValue();
+    }
+
+    /**
+     * Mark tile as no longer decoding
+     *
+     * @param key
+     */
+    void done(final String key) {
+      decoding.remove(key);
+    }
+
+    /**
+     * Should the decoded tile with key be delivered?
+     * <p>
+     * Each wanted tile is only delivered once
+     *
+     * @param key
+     * @return true if the tile is still wanted, false otherwise
+     */
+    boolean deliver(final String key) {
+      return wanted.remove(key);
+    }
+  }
+
+  private static class Request {
+
+    private final Rect region;
+
+    private final int sampleSize;
+
+    private final String key;
+
+    private Request(final Rect region, final int sampleSize, final String key) {
+      this.region = region;
+      this.sampleSize = sampleSize;
+      this.key = key;
+    }
+  }
+
+  /**
+   * Get largest power of two sample size that shows the image at the given
+   * scale without losing detail
+   *
+   * @param scale
+   *          ratio of displayed size to the original image size
+   * @return sample size
+   */
+  public static int getSampleSize(final float scale) {
+    int sampleSize = 1;
+    while (scale * sampleSize * 2 <= 1)
+      sampleSize *= 2;
+    return sampleSize;
+  }
+
+  /**
+   * Get the columns and rows of the tiles intersecting the viewport
+   *
+   * @param left
+   * @param top
+   * @param right
+   * @param bottom
+   * @param width
+   *          of the image
+   * @param height
+   *          of the image
+   * @param span
+   *          width and height of each tile in image coordinates
+   * @return first column, first row, last column, and last row, inclusive
+   */
+  static int[] getTileBounds(final int left, final int top, final int right,
+      final int bottom, final int width, final int height, final int span) {
+    return new int[] { Math.max(0, left / span), Math.max(0, top / span),
+        Math.min((width - 1) / span, (right - 1) / span),
+        Math.min((height - 1) / span, (bottom - 1) / span) };
+  }
+
+  /**
+   * Get tile cache size holding two screens of pixels
+   *
+   * @param context
+   * @return size in bytes
+   */
+  public static int getCacheSize(final Context context) {
+    DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+    return metrics.widthPixels * metrics.heightPixels * 4 * 2;
+  }
+
+  private final BitmapRegionDecoder decoder;
+
+  private final int tileSize;
+
+  private final BitmapCache tiles;
+
+  private final Handler handler = new Handler(Looper.getMainLooper());
+
+  private final TileQueue<Request> queue = new TileQueue<Request>();
+
+  private TileCallback callback;
+
+  private boolean decoding;
+
+  private final Runnable drain = new Runnable() {
+
+    public void run() {
+      while (true) {
+        Request request;
+        synchronized (TileDecoder.this) {
+          request = queue.poll();
+          if (request == null) {
+            decoding = false;
+            return;
+          }
+        }
+        try {
+          decodeTile(request);
+        } finally {
+          // Tiles are cached before this so a new viewport finds them
+          synchronized (TileDecoder.this) {
+            queue.done(request.key);
+          }
+        }
+      }
+    }
+  };
+
+  /**
+   * Create tile decoder for image at path with a cache sized to the screen
+   *
+   * @param context
+   * @param path
+   * @param tileSize
+   *          width and height of decoded tiles in pixels
+   * @throws IOException
+   */
+  public TileDecoder(final Context context, final String path,
+      final int tileSize) throws IOException {
+    this(BitmapRegionDecoder.newInstance(path, false), tileSize,
+        getCacheSize(context));
+  }
+
+  /**
+   * Create tile decoder
+   *
+   * @param decoder
+   * @param tileSize
+   *          width and height of decoded tiles in pixels
+   * @param cacheSize
+   *          maximum byte count of cached tiles
+   */
+  public TileDecoder(final BitmapRegionDecoder decoder, final int tileSize,
+      final int cacheSize) {
+    this.decoder = decoder;
+    this.tileSize = tileSize;
+    tiles = new BitmapCache(cacheSize);
+  }
+
+  /**
+   * Get width of image
+   *
+   * @return width
+   */
+  public int getWidth() {
+    return decoder.getWidth();
+  }
+
+  /**
+   * Get height of image
+   *
+   * @return height
+   */
+  public int getHeight() {
+    return decoder.getHeight();
+  }
+
+  /**
+   * Set visible region of the image and the scale it is displayed at
+   * <p>
+   * Cached tiles in the viewport are returned immediately, missing tiles are
+   * decoded and passed to the callback. Tiles from a previous viewport that
+   * have not started decoding are cancelled and tiles that are decoding are
+   * not decoded again.
+   *
+   * @param viewport
+   *          visible region in image coordinates
+   * @param scale
+   *          ratio of displayed size to the original image size
+   * @param callback
+   * @return cached tiles intersecting the viewport
+   */
+  public synchronized List<Tile> setViewport(final Rect viewport,
+      final float scale, final TileCallback callback) {
+    this.callback = callback;
+    int sampleSize = getSampleSize(scale);
+    queue.clear();
+
+    List<Tile> cached = new ArrayList<Tile>();
+    int span = tileSize * sampleSize;
+    int width = getWidth();
+    int height = getHeight();
+    int[] bounds = getTileBounds(viewport.left, viewport.top, viewport.right,
+        viewport.bottom, width, height, span);
+    for (int row = bounds[1]; row <= bounds[3]; row++)
+      for (int column = bounds[0]; column <= bounds[2]; column++) {
+        Rect region = new Rect(column * span, row * span, Math.min(width,
+            (column + 1) * span), Math.min(height, (row + 1) * span));
+        String key = sampleSize + ":" + column + ':' + row;
+        Bitmap bitmap = tiles.get(key);
+        if (bitmap != null)
+          cached.add(new Tile(region, sampleSize, bitmap));
+        else
+          queue.add(key, new Request(region, sampleSize, key));
+      }
+
+    if (!queue.isEmpty() && !decoding) {
+      decoding = true;
+      DecodeExecutor.getDefault().execute(drain,
+          DecodeExecutor.PRIORITY_HIGH);
+    }
+    return cached;
+  }
+
+  private void decodeTile(final Request request) {
+    final String key = request.key;
+    Options options = new Options();
+    options.inSampleSize = request.sampleSize;
+    Bitmap bitmap;
+    synchronized (decoder) {
+      if (decoder.isRecycled())
+        return;
+      bitmap = decoder.decodeRegion(request.region, options);
+    }
+    if (bitmap == null)
+      return;
+
+    tiles.put(key, bitmap);
+    final Tile tile = new Tile(request.region, request.sampleSize, bitmap);
+    handler.post(new Runnable() {
+
+      public void run() {
+        TileCallback callback;
+        synchronized (TileDecoder.this) {
+          if (!queue.deliver(key))
+            return;
+          callback = TileDecoder.this.callback;
+        }
+        if (callback != null)
+          callback.onTileDecoded(tile);
+      }
+    });
+  }
+
+  /**
+   * Cancel all pending tiles and release the decoder and cached tiles
+   */
+  public void recycle() {
+    synchronized (this) {
+      queue.clear();
+      callback = null;
+    }
+    tiles.clear();
+    synchronized (decoder) {
+      decoder.recycle();
+    }
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static android.graphics.Bitmap.Config.ARGB_8888;
+import static android.graphics.Shader.TileMode.CLAMP;
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * Common {@link BitmapTransformation} implementations
+ */
+public class Transformations {
+
+  /**
+   * Number of box blur passes applied by {@link #blur(int)}
+   */
+  private static final int BLUR_PASSES = 3;
+
+  /**
+   * Create transformation that scales and crops bitmaps to fill the given
+   * size, keeping the center of the bitmap
+   *
+   * @param width
+   * @param height
+   * @return transformation
+   */
+  public static BitmapTransformation centerCrop(final int width,
+      final int height) {
+    return new BitmapTransformation() {
+
+      public String getKey() {
+        return "centerCrop:" + width + 'x' + height;
+      }
+
+      public Bitmap transform(final Bitmap bitmap) {
+        int sourceWidth = bitmap.getWidth();
+        int sourceHeight = bitmap.getHeight();
+        if (sourceWidth == width && sourceHeight == height)
+          return bitmap;
+
+        float scale = Math.max((float) width / sourceWidth, (float) height
+            / sourceHeight);
+        int cropWidth = Math.round(width / scale);
+        int cropHeight = Math.round(height / scale);
+        int left = (sourceWidth - cropWidth) / 2;
+        int top = (sourceHeight - cropHeight) / 2;
+        Rect crop = new Rect(left, top, left + cropWidth, top + cropHeight);
+
+        Bitmap cropped = Bitmap.createBitmap(width, height, getConfig(bitmap));
+        Canvas canvas = new Canvas(cropped);
+        canvas.drawBitmap(bitmap, crop, new Rect(0, 0, width, height),
+            new Paint(Paint.FILTER_BITMAP_FLAG));
+        return cropped;
+      }
+    };
+  }
+
+  /**
+   * Create transformation that rounds the corners of bitmaps with the given
+   * radius
+   *
+   * @param radius
+   *          in pixels
+   * @return transformation
+   */
+  public static BitmapTransformation roundedCorners(final float radius) {
+    return new BitmapTransformation() {
+
+      public String getKey() {
+        return "roundedCorners:" + radius;
+      }
+
+      public Bitmap transform(final Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        Bitmap rounded = Bitmap.createBitmap(width, height, ARGB_8888);
+        Canvas canvas = new Canvas(rounded);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setShader(new BitmapShader(bitmap, CLAMP, CLAMP));
+        canvas.drawRoundRect(new RectF(0, 0, width, height), radius, radius,
+            paint);
+        return rounded;
+      }
+    };
+  }
+
+  /**
+   * Create transformation that blurs bitmaps with the given radius
+   * <p>
+   * Three passes of a box blur are applied to approximate a Gaussian blur,
+   * the time taken grows with the number of pixels but not the radius so
+   * bitmaps should be decoded to a small maximum size before being blurred
+   *
+   * @param radius
+   *          in pixels, less than 1 to not blur
+   * @return transformation
+   */
+  public static BitmapTransformation blur(final int radius) {
+    return new BitmapTransformation() {
+
+      public String getKey() {
+        return "blur:" + radius;
+      }
+
+      public Bitmap transform(final Bitmap bitmap) {
+        if (radius < 1)
+          return bitmap;
+
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        blur(pixels, width, height, radius);
+        Bitmap blurred = Bitmap.createBitmap(width, height, getConfig(bitmap));
+        blurred.setPixels(pixels, 0, width, 0, 0, width, height);
+        return blurred;
+      }
+    };
+  }
+
+  /**
+   * Blur pixels in place
+   * <p>
+   * Colors are premultiplied by alpha while blurring so that transparent
+   * pixels do not tint the pixels next to them, pixels past the edges repeat
+   * the edge pixels
+   *
+   * @param pixels
+   * @param width
+   * @param height
+   * @param radius
+   */
+  static void blur(final int[] pixels, final int width, final int height,
+      final int radius) {
+    if (radius < 1)
+      return;
+
+    final int length = width * height;
+    for (int i = 0; i < length; i++)
+      pixels[i] = premultiply(pixels[i]);
+
+    // Each pass writes its output transposed so the second pass blurs columns
+    int[] transposed = new int[length];
+    for (int pass = 0; pass < BLUR_PASSES; pass++) {
+      blurRows(pixels, transposed, width, height, radius);
+      blurRows(transposed, pixels, height, width, radius);
+    }
+
+    for (int i = 0; i < length; i++)
+      pixels[i] = unpremultiply(pixels[i]);
+  }
+
+  private static void blurRows(final int[] pixels, final int[] transposed,
+      final int width, final int height, final int radius) {
+    final int window = radius * 2 + 1;
+    final int half = window / 2;
+    final int last = width - 1;
+    for (int y = 0; y < height; y++) {
+      final int row = y * width;
+      int alpha = 0;
+      int red = 0;
+      int green = 0;
+      int blue = 0;
+      for (int i = -radius; i <= radius; i++) {
+        int pixel = pixels[row + Math.max(0, Math.min(last, i))];
+        alpha += pixel >>> 24;
+        red += (pixel >> 16) & 0xFF;
+        green += (pixel >> 8) & 0xFF;
+        blue += pixel & 0xFF;
+      }
+
+      for (int x = 0; x < width; x++) {
+        transposed[x * height + y] = (alpha + half) / window << 24
+            | (red + half) / window << 16 | (green + half) / window << 8
+            | (blue + half) / window;
+
+        int removed = pixels[row + Math.max(0, x - radius)];
+        int added = pixels[row + Math.min(last, x + radius + 1)];
+        alpha += (added >>> 24) - (removed >>> 24);
+        red += ((added >> 16) & 0xFF) - ((removed >> 16) & 0xFF);
+        green += ((added >> 8) & 0xFF) - ((removed >> 8) & 0xFF);
+        blue += (added & 0xFF) - (removed & 0xFF);
+      }
+    }
+  }
+
+  private static int premultiply(final int pixel) {
+    int alpha = pixel >>> 24;
+    if (alpha == 0xFF)
+      return pixel;
+    int red = (((pixel >> 16) & 0xFF) * alpha + 127) / 255;
+    int green = (((pixel >> 8) & 0xFF) * alpha + 127) / 255;
+    int blue = ((pixel & 0xFF) * alpha + 127) / 255;
+    return alpha << 24 | red << 16 | green << 8 | blue;
+  }
+
+  private static int unpremultiply(final int pixel) {
+    int alpha = pixel >>> 24;
+    if (alpha == 0xFF)
+      return pixel;
+    if (alpha == 0)
+      return 0;
+    int half = alpha / 2;
+    int red = Math.min(0xFF, (((pixel >> 16) & 0xFF) * 255 + half) / alpha);
+    int green = Math.min(0xFF, (((pixel >> 8) & 0xFF) * 255 + half) / alpha);
+    int blue = Math.min(0xFF, ((pixel & 0xFF) * 255 + half) / alpha);
+    return alpha << 24 | red << 16 | green << 8 | blue;
+  }
+
+  private static Bitmap.Config getConfig(final Bitmap bitmap) {
+    Bitmap.Config config = bitmap.getConfig();
+    return config != null ? config : ARGB_8888;
+  }
+
+  private Transformations() {
+  }
+}
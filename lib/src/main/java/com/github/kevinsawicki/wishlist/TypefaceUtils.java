@@ -58,6 +58,13 @@ public class TypefaceUtils {
     return typeface;
   }
 
+  /**
+   * Clear all memo'ized typefaces
+   */
+  public static void clearTypefaces() {
+    TYPEFACES.clear();
+  }
+
   /**
    * Set typeface with name on given text view
    *
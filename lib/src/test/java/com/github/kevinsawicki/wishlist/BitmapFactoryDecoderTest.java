@@ -0,0 +1,54 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link BitmapFactoryDecoder}
+ */
+public class BitmapFactoryDecoderTest {
+
+  /**
+   * Temporary storage is allocated once per thread and reused by every decode
+   * on that thread
+   *
+   * @throws InterruptedException
+   */
+  @Test
+  public void tempStorageReused() throws InterruptedException {
+    final byte[] buffer = BitmapFactoryDecoder.getTempStorage();
+    assertEquals(16 * 1024, buffer.length);
+    assertSame(buffer, BitmapFactoryDecoder.getTempStorage());
+
+    final byte[][] other = new byte[2][];
+    Thread thread = new Thread() {
+
+      public void run() {
+        other[0] = BitmapFactoryDecoder.getTempStorage();
+        other[1] = BitmapFactoryDecoder.getTempStorage();
+      }
+    };
+    thread.start();
+    thread.join();
+    assertSame(other[0], other[1]);
+    assertNotSame(buffer, other[0]);
+  }
+}
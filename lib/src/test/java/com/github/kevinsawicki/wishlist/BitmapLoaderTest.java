@@ -0,0 +1,93 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import android.graphics.Bitmap;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import sun.misc.Unsafe;
+
+/**
+ * Unit tests of {@link BitmapLoader}
+ */
+public class BitmapLoaderTest {
+
+  /**
+   * Create bitmap without running any of its stub methods
+   * <p>
+   * The bitmap stands in for a decoded bitmap that the code under test must
+   * never read or store
+   *
+   * @return bitmap
+   * @throws Exception
+   */
+  private static Bitmap newBitmap() throws Exception {
+    Field field = Unsafe.class.getDeclaredField("theUnsafe");
+    field.setAccessible(true);
+    return (Bitmap) ((Unsafe) field.get(null)).allocateInstance(Bitmap.class);
+  }
+
+  /**
+   * Exact sized bitmaps cancelled after decoding but before being box scaled
+   * are not returned or cached
+   *
+   * @throws Exception
+   */
+  @Test
+  public void cancelBeforeBoxScale() throws Exception {
+    final Bitmap sampled = newBitmap();
+    final List<String> cached = new ArrayList<String>();
+    BitmapCache cache = new BitmapCache(1024) {
+
+      public BitmapCache put(final String key, final Bitmap bitmap) {
+        cached.add(key);
+        return this;
+      }
+    };
+    byte[] data = new byte[16];
+    final BitmapLoader[] loader = new BitmapLoader[1];
+    loader[0] = new BitmapLoader(30, 30, BitmapSource.fromBytes("image",
+        data, 0, data.length));
+    loader[0].setCache(cache).setExactSize(true).setBoxFilter(true)
+        .setUseExifThumbnail(false).setDecoder(new ImageDecoder<Bitmap>() {
+
+          public void decodeBounds(final BitmapSource source,
+              final DecodeOptions<Bitmap> options) {
+            options.outWidth = 100;
+            options.outHeight = 100;
+          }
+
+          public Bitmap decode(final BitmapSource source,
+              final DecodeOptions<Bitmap> options) {
+            assertEquals(2, options.sampleSize);
+            loader[0].cancel();
+            return sampled;
+          }
+        });
+
+    assertNull(loader[0].load());
+    assertTrue(loader[0].isCancelled());
+    assertTrue(cached.isEmpty());
+  }
+}
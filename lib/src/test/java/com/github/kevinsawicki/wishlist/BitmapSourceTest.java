@@ -0,0 +1,74 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link BitmapSource}
+ */
+public class BitmapSourceTest {
+
+  private static byte[] read(final InputStream stream) throws IOException {
+    try {
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      byte[] buffer = new byte[1024];
+      int read;
+      while ((read = stream.read(buffer)) != -1)
+        output.write(buffer, 0, read);
+      return output.toByteArray();
+    } finally {
+      stream.close();
+    }
+  }
+
+  /**
+   * Stream sources can be read completely more than once and close the
+   * underlying stream after buffering it
+   *
+   * @throws IOException
+   */
+  @Test
+  public void streamReadMoreThanOnce() throws IOException {
+    byte[] data = new byte[100 * 1024];
+    for (int i = 0; i < data.length; i++)
+      data[i] = (byte) i;
+    final boolean[] closed = new boolean[1];
+    InputStream stream = new ByteArrayInputStream(data) {
+
+      @Override
+      public void close() throws IOException {
+        closed[0] = true;
+        super.close();
+      }
+    };
+    BitmapSource source = BitmapSource.fromStream("key", stream);
+    assertEquals(-1, source.length());
+    assertArrayEquals(data, read(source.open()));
+    assertTrue(closed[0]);
+    assertArrayEquals(data, read(source.open()));
+    assertEquals(data.length, source.length());
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link BoxScaler}
+ */
+public class BoxScalerTest {
+
+  /**
+   * Each scaled pixel is the average of the pixels it covers
+   */
+  @Test
+  public void halve() {
+    int[] pixels = new int[] { 0xFF000000, 0xFF0000FF, 0xFFFFFFFF, 0xFF000000, //
+        0xFF00FF00, 0xFF0000FF, 0x00000000, 0x00000000 };
+    int[] scaled = new int[2];
+    BoxScaler.scale(pixels, 4, 2, scaled, 2, 1);
+    assertEquals(0xFF004080, scaled[0]);
+    assertEquals(0x80808080, scaled[1]);
+  }
+
+  /**
+   * Colors of transparent pixels do not bleed into opaque pixels
+   */
+  @Test
+  public void premultiplied() {
+    int[] pixels = new int[] { 0xFFFF0000, 0x0000FF00, 0x40FFFFFF, 0x00000000 };
+    int[] scaled = new int[2];
+    BoxScaler.scale(pixels, 4, 1, scaled, 2, 1);
+    assertEquals(0x80FF0000, scaled[0]);
+    assertEquals(0x20FFFFFF, scaled[1]);
+  }
+
+  /**
+   * Source pixels spanning two scaled pixels are split by area
+   */
+  @Test
+  public void fractionalCoverage() {
+    int[] pixels = new int[] { 0xFF000000, 0xFF000030, 0xFF000060 };
+    int[] scaled = new int[2];
+    BoxScaler.scale(pixels, 3, 1, scaled, 2, 1);
+    // Covers all of the first pixel and half of the second
+    assertEquals(0xFF000010, scaled[0]);
+    // Covers half of the second pixel and all of the third
+    assertEquals(0xFF000050, scaled[1]);
+
+    int[] column = new int[] { 0xFF000000, 0xFF000030, 0xFF000060 };
+    BoxScaler.scale(column, 1, 3, scaled, 1, 2);
+    assertEquals(0xFF000010, scaled[0]);
+    assertEquals(0xFF000050, scaled[1]);
+  }
+
+  /**
+   * Solid colors are unchanged at any size
+   */
+  @Test
+  public void solid() {
+    int[] pixels = new int[97 * 61];
+    for (int i = 0; i < pixels.length; i++)
+      pixels[i] = 0xFF336699;
+    int[] scaled = new int[13 * 7];
+    BoxScaler.scale(pixels, 97, 61, scaled, 13, 7);
+    for (int pixel : scaled)
+      assertEquals(0xFF336699, pixel);
+  }
+
+  /**
+   * Scaling in place matches scaling into a separate array
+   */
+  @Test
+  public void inPlace() {
+    int[] pixels = new int[123 * 77];
+    Random random = new Random(7);
+    for (int i = 0; i < pixels.length; i++)
+      pixels[i] = random.nextInt();
+    int[] scaled = new int[50 * 31];
+    BoxScaler.scale(pixels, 123, 77, scaled, 50, 31);
+    BoxScaler.scale(pixels, 123, 77, pixels, 50, 31);
+    int[] inPlace = new int[scaled.length];
+    System.arraycopy(pixels, 0, inPlace, 0, inPlace.length);
+    assertArrayEquals(scaled, inPlace);
+  }
+
+  /**
+   * Scaling up is rejected
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void scaleUp() {
+    BoxScaler.scale(new int[4], 2, 2, new int[9], 3, 3);
+  }
+}
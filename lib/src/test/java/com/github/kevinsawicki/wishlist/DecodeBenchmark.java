@@ -0,0 +1,136 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmark of decoding a directory of images on a {@link DecodeExecutor} with
+ * an increasing number of threads using the {@link ImageIODecoder}
+ * <p>
+ * Only the decoder is measured, each image has its bounds decoded and is then
+ * decoded with a rounded sample size. The caching, pooling, and transformation
+ * stages of {@link DecodeBitmapTask} are not run.
+ * <p>
+ * Usage: DecodeBenchmark directory [max size] [max threads]
+ */
+public class DecodeBenchmark {
+
+  private final ImageDecoder<BufferedImage> decoder;
+
+  private final List<BitmapSource> sources;
+
+  private final int maxSize;
+
+  /**
+   * Create benchmark
+   *
+   * @param decoder
+   * @param sources
+   * @param maxSize
+   *          maximum width and height images are decoded to
+   */
+  public DecodeBenchmark(final ImageDecoder<BufferedImage> decoder,
+      final List<BitmapSource> sources, final int maxSize) {
+    this.decoder = decoder;
+    this.sources = sources;
+    this.maxSize = maxSize;
+  }
+
+  private BufferedImage decode(final BitmapSource source) {
+    DecodeOptions<BufferedImage> options = new DecodeOptions<BufferedImage>();
+    decoder.decodeBounds(source, options);
+    if (options.outWidth <= 0 || options.outHeight <= 0)
+      return null;
+
+    options.sampleSize = SampleSize.getRounded(options.outWidth,
+        options.outHeight, maxSize, maxSize);
+    return decoder.decode(source, options);
+  }
+
+  /**
+   * Decode all sources using the given number of threads
+   *
+   * @param threads
+   * @return number of images decoded
+   * @throws InterruptedException
+   */
+  public int run(final int threads) throws InterruptedException {
+    DecodeExecutor executor = new DecodeExecutor(threads);
+    try {
+      final CountDownLatch done = new CountDownLatch(sources.size());
+      final AtomicInteger decoded = new AtomicInteger();
+      for (final BitmapSource source : sources)
+        executor.execute(new Runnable() {
+
+          public void run() {
+            try {
+              if (decode(source) != null)
+                decoded.incrementAndGet();
+            } finally {
+              done.countDown();
+            }
+          }
+        });
+      done.await();
+      return decoded.get();
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Run benchmark
+   *
+   * @param args
+   * @throws InterruptedException
+   */
+  public static void main(final String[] args) throws InterruptedException {
+    if (args.length == 0) {
+      System.err.println("Usage: DecodeBenchmark directory [max size] [max threads]");
+      System.exit(1);
+    }
+
+    List<BitmapSource> sources = new ArrayList<BitmapSource>();
+    File[] files = new File(args[0]).listFiles();
+    if (files != null)
+      for (File file : files)
+        if (file.isFile())
+          sources.add(BitmapSource.fromFile(file.getPath()));
+    int maxSize = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+    int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime
+        .getRuntime().availableProcessors() * 2;
+
+    DecodeBenchmark benchmark = new DecodeBenchmark(new ImageIODecoder(),
+        sources, maxSize);
+    // Warm up
+    benchmark.run(maxThreads);
+
+    System.out.println("threads\tdecoded\tms\timages/s");
+    for (int threads = 1; threads <= maxThreads; threads++) {
+      long start = System.nanoTime();
+      int decoded = benchmark.run(threads);
+      long elapsed = Math.max(1, (System.nanoTime() - start) / 1000000);
+      System.out.println(threads + "\t" + decoded + "\t" + elapsed + "\t"
+          + (decoded * 1000L / elapsed));
+    }
+  }
+}
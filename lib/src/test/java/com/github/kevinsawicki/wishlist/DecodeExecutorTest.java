@@ -0,0 +1,150 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link DecodeExecutor}
+ */
+public class DecodeExecutorTest {
+
+  /**
+   * Queued runnables run most recently executed first
+   *
+   * @throws Exception
+   */
+  @Test
+  public void lastInFirstOut() throws Exception {
+    DecodeExecutor executor = new DecodeExecutor(1);
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(3);
+    final List<Integer> order = Collections
+        .synchronizedList(new ArrayList<Integer>());
+
+    executor.execute(new Runnable() {
+
+      public void run() {
+        try {
+          blocked.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    for (int i = 1; i <= 3; i++) {
+      final int value = i;
+      executor.execute(new Runnable() {
+
+        public void run() {
+          order.add(value);
+          done.countDown();
+        }
+      });
+    }
+    assertEquals(3, executor.getQueuedCount());
+
+    blocked.countDown();
+    assertTrue(done.await(10, SECONDS));
+    assertEquals(Arrays.asList(3, 2, 1), order);
+  }
+
+  /**
+   * Runnables executed while paused are held until resumed
+   *
+   * @throws Exception
+   */
+  @Test
+  public void pauseAndResume() throws Exception {
+    DecodeExecutor executor = new DecodeExecutor(1);
+    final CountDownLatch done = new CountDownLatch(2);
+    executor.pause();
+    assertTrue(executor.isPaused());
+    for (int i = 0; i < 2; i++)
+      executor.execute(new Runnable() {
+
+        public void run() {
+          done.countDown();
+        }
+      });
+
+    assertFalse(done.await(100, MILLISECONDS));
+    assertEquals(2, executor.getQueuedCount());
+
+    executor.resume();
+    assertFalse(executor.isPaused());
+    assertTrue(done.await(10, SECONDS));
+  }
+
+  /**
+   * Runnables executed without a priority run at normal priority
+   *
+   * @throws Exception
+   */
+  @Test
+  public void defaultPriority() throws Exception {
+    DecodeExecutor executor = new DecodeExecutor(1);
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(3);
+    final List<Integer> order = Collections
+        .synchronizedList(new ArrayList<Integer>());
+
+    executor.execute(new Runnable() {
+
+      public void run() {
+        try {
+          blocked.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    int[] priorities = new int[] { DecodeExecutor.PRIORITY_HIGH,
+        DecodeExecutor.PRIORITY_LOW };
+    for (final int priority : priorities)
+      executor.execute(new Runnable() {
+
+        public void run() {
+          order.add(priority);
+          done.countDown();
+        }
+      }, priority);
+    executor.execute(new Runnable() {
+
+      public void run() {
+        order.add(DecodeExecutor.PRIORITY_NORMAL);
+        done.countDown();
+      }
+    });
+
+    blocked.countDown();
+    assertTrue(done.await(10, SECONDS));
+    assertEquals(Arrays.asList(DecodeExecutor.PRIORITY_HIGH,
+        DecodeExecutor.PRIORITY_NORMAL, DecodeExecutor.PRIORITY_LOW), order);
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.github.kevinsawicki.wishlist.DimensionIndex.Dimensions;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests of {@link DimensionIndex}
+ */
+public class DimensionIndexTest {
+
+  /**
+   * Temporary folder for image and index files
+   */
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File image() throws IOException {
+    File image = folder.newFile("image.jpg");
+    assertTrue(image.setLastModified(1000000L));
+    return image;
+  }
+
+  /**
+   * Dimensions of a modified file are not returned
+   *
+   * @throws IOException
+   */
+  @Test
+  public void modifiedFileIsStale() throws IOException {
+    File image = image();
+    DimensionIndex index = new DimensionIndex(10);
+    index.put(image.getPath(), new Dimensions(640, 480, image.lastModified()));
+    assertNotNull(index.get(image.getPath()));
+
+    assertTrue(image.setLastModified(2000000L));
+    assertNotNull(index.peek(image.getPath()));
+    assertNull(index.get(image.getPath()));
+    assertNull(index.peek(image.getPath()));
+  }
+
+  /**
+   * Saved index is loaded by a new index using the same file
+   *
+   * @throws IOException
+   */
+  @Test
+  public void saveAndLoad() throws IOException {
+    File image = image();
+    File file = new File(folder.getRoot(), "index");
+    DimensionIndex index = new DimensionIndex(file, 10);
+    index.put(image.getPath(), new Dimensions(640, 480, image.lastModified()));
+    assertTrue(index.save());
+
+    Dimensions loaded = new DimensionIndex(file, 10).get(image.getPath());
+    assertNotNull(loaded);
+    assertEquals(640, loaded.width);
+    assertEquals(480, loaded.height);
+  }
+
+  /**
+   * Colors are saved and loaded along with dimensions
+   *
+   * @throws IOException
+   */
+  @Test
+  public void saveAndLoadColors() throws IOException {
+    File file = new File(folder.getRoot(), "index");
+    DimensionIndex index = new DimensionIndex(file, 10);
+    int[] colors = new int[] { 0xFF102030, 0xFFA0B0C0 };
+    index.put("a", new Dimensions(640, 480, 5, colors));
+    index.put("b", new Dimensions(320, 240, 6));
+    assertTrue(index.save());
+
+    DimensionIndex loaded = new DimensionIndex(file, 10);
+    assertArrayEquals(colors, loaded.get("a", 5).colors);
+    assertEquals(640, loaded.get("a", 5).width);
+    assertNull(loaded.get("b", 6).colors);
+    assertEquals(240, loaded.get("b", 6).height);
+  }
+
+  /**
+   * Index files written before colors were indexed are still loaded
+   *
+   * @throws IOException
+   */
+  @Test
+  public void loadWithoutColors() throws IOException {
+    File file = new File(folder.getRoot(), "index");
+    DataOutputStream output = new DataOutputStream(new FileOutputStream(file));
+    output.writeInt(1);
+    output.writeInt(1);
+    output.writeUTF("a");
+    output.writeLong(5);
+    output.writeInt(640);
+    output.writeInt(480);
+    output.close();
+
+    Dimensions loaded = new DimensionIndex(file, 10).get("a", 5);
+    assertNotNull(loaded);
+    assertEquals(480, loaded.height);
+    assertNull(loaded.colors);
+  }
+
+  /**
+   * Peeking does not load the index file, entries are visible once loaded and
+   * entries added before loading are kept
+   *
+   * @throws IOException
+   */
+  @Test
+  public void peekBeforeLoad() throws IOException {
+    File file = new File(folder.getRoot(), "index");
+    DimensionIndex index = new DimensionIndex(file, 10);
+    index.put("a", new Dimensions(640, 480, 5));
+    assertTrue(index.save());
+
+    DimensionIndex loaded = new DimensionIndex(file, 10);
+    assertNull(loaded.peek("a"));
+    assertFalse(loaded.isLoaded());
+    loaded.put("b", new Dimensions(320, 240, 6));
+    assertTrue(loaded.isLoaded());
+    assertEquals(640, loaded.peek("a").width);
+    assertEquals(320, loaded.peek("b").width);
+  }
+
+  /**
+   * Least recently used entries are removed once the index is full
+   */
+  @Test
+  public void maximumEntries() {
+    DimensionIndex index = new DimensionIndex(2);
+    index.put("a", new Dimensions(1, 1, 0));
+    index.put("b", new Dimensions(2, 2, 0));
+    index.peek("a");
+    index.put("c", new Dimensions(3, 3, 0));
+    assertEquals(2, index.size());
+    assertNotNull(index.peek("a"));
+    assertNull(index.peek("b"));
+  }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests of {@link DownloadCache} against a local HTTP server
+ */
+public class DownloadCacheTest {
+
+  /**
+   * Temporary folder for downloads
+   */
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final byte[] body = new byte[64 * 1024];
+
+  private final AtomicInteger requests = new AtomicInteger();
+
+  private final AtomicInteger active = new AtomicInteger();
+
+  private final AtomicInteger maxActive = new AtomicInteger();
+
+  private HttpServer server;
+
+  private String base;
+
+  /**
+   * Start server that writes the body slowly in chunks
+   *
+   * @throws Exception
+   */
+  @Before
+  public void startServer() throws Exception {
+    new Random(1).nextBytes(body);
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", new HttpHandler() {
+
+      public void handle(final HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        int running = active.incrementAndGet();
+        synchronized (maxActive) {
+          maxActive.set(Math.max(maxActive.get(), running));
+        }
+        try {
+          if (exchange.getRequestURI().getPath().startsWith("/missing")) {
+            active.decrementAndGet();
+            exchange.sendResponseHeaders(404, -1);
+            return;
+          }
+          exchange.sendResponseHeaders(200, body.length);
+          OutputStream output = exchange.getResponseBody();
+          for (int offset = 0; offset < body.length; offset += 8192) {
+            Thread.sleep(10);
+            // Client may start its next download once the last chunk is read
+            if (offset + 8192 >= body.length)
+              active.decrementAndGet();
+            output.write(body, offset, Math.min(8192, body.length - offset));
+            output.flush();
+          }
+          output.close();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } finally {
+          exchange.close();
+        }
+      }
+    });
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+    base = "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  /**
+   * Stop server
+   */
+  @After
+  public void stopServer() {
+    server.stop(0);
+  }
+
+  private static byte[] read(final InputStream stream) throws IOException {
+    try {
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = stream.read(buffer)) != -1)
+        output.write(buffer, 0, read);
+      return output.toByteArray();
+    } finally {
+      stream.close();
+    }
+  }
+
+  /**
+   * Concurrent streams share a single download and later streams read from
+   * disk
+   *
+   * @throws Exception
+   */
+  @Test
+  public void sharedDownload() throws Exception {
+    final DownloadCache cache = new DownloadCache(folder.newFolder(),
+        1024 * 1024);
+    final String url = base + "/image.jpg";
+    final List<byte[]> results = new ArrayList<byte[]>();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < 4; i++)
+      threads.add(new Thread() {
+
+        public void run() {
+          try {
+            byte[] read = read(cache.open(url));
+            synchronized (results) {
+              results.add(read);
+            }
+          } catch (IOException e) {
+            // Missing result fails the test
+          }
+        }
+      });
+    for (Thread thread : threads)
+      thread.start();
+    for (Thread thread : threads)
+      thread.join();
+
+    assertEquals(4, results.size());
+    for (byte[] result : results)
+      assertArrayEquals(body, result);
+    assertEquals(1, requests.get());
+    assertNotNull(cache.get(url));
+    assertEquals(body.length, cache.getSize());
+
+    assertArrayEquals(body, read(cache.open(url)));
+    assertEquals(1, requests.get());
+  }
+
+  /**
+   * Bytes can be read before the download completes
+   *
+   * @throws Exception
+   */
+  @Test
+  public void readWhileDownloading() throws Exception {
+    DownloadCache cache = new DownloadCache(folder.newFolder(), 1024 * 1024);
+    String url = base + "/header.jpg";
+    InputStream stream = cache.open(url);
+    byte[] header = new byte[16];
+    assertEquals(16, stream.read(header));
+    assertNull(cache.get(url));
+    stream.close();
+  }
+
+  /**
+   * Connections are limited independently of the number of readers
+   *
+   * @throws Exception
+   */
+  @Test
+  public void maxConnections() throws Exception {
+    final DownloadCache cache = new DownloadCache(folder.newFolder(),
+        1024 * 1024).setMaxConnections(1);
+    assertEquals(1, cache.getMaxConnections());
+    List<Thread> threads = new ArrayList<Thread>();
+    final AtomicInteger completed = new AtomicInteger();
+    for (int i = 0; i < 3; i++) {
+      final String url = base + "/image" + i + ".jpg";
+      threads.add(new Thread() {
+
+        public void run() {
+          try {
+            if (read(cache.open(url)).length == body.length)
+              completed.incrementAndGet();
+          } catch (IOException e) {
+            // Missing completion fails the test
+          }
+        }
+      });
+    }
+    for (Thread thread : threads)
+      thread.start();
+    for (Thread thread : threads)
+      thread.join();
+
+    assertEquals(3, completed.get());
+    assertEquals(3, requests.get());
+    assertEquals(1, maxActive.get());
+  }
+
+  /**
+   * Failed downloads throw when read and are not cached
+   *
+   * @throws Exception
+   */
+  @Test
+  public void failedDownload() throws Exception {
+    DownloadCache cache = new DownloadCache(folder.newFolder(), 1024 * 1024);
+    String url = base + "/missing.jpg";
+    try {
+      read(cache.open(url));
+      fail("Exception not thrown");
+    } catch (IOException e) {
+      // Expected
+    }
+    assertNull(cache.get(url));
+    assertEquals(0, cache.getSize());
+  }
+
+  /**
+   * Preparing starts the download without blocking and runs the callback once
+   * the first bytes are written, before the download completes
+   *
+   * @throws Exception
+   */
+  @Test
+  public void prepare() throws Exception {
+    final DownloadCache cache = new DownloadCache(folder.newFolder(),
+        1024 * 1024);
+    final String url = base + "/prepared.jpg";
+    final CountDownLatch ready = new CountDownLatch(1);
+    final AtomicBoolean streaming = new AtomicBoolean();
+    Runnable callback = new Runnable() {
+
+      public void run() {
+        // Callback runs on the download thread so it cannot complete meanwhile
+        streaming.set(cache.get(url) == null);
+        ready.countDown();
+      }
+    };
+    assertFalse(cache.prepare(url, callback));
+    assertTrue(ready.await(10, SECONDS));
+    assertTrue(streaming.get());
+    assertTrue(cache.prepare(url, callback));
+    assertArrayEquals(body, read(cache.open(url)));
+    assertEquals(1, requests.get());
+  }
+
+  /**
+   * Readers prepared for a failed download fail without downloading again
+   *
+   * @throws Exception
+   */
+  @Test
+  public void prepareFailed() throws Exception {
+    DownloadCache cache = new DownloadCache(folder.newFolder(), 1024 * 1024);
+    String url = base + "/missing.jpg";
+    final CountDownLatch ready = new CountDownLatch(1);
+    assertFalse(cache.prepare(url, new Runnable() {
+
+      public void run() {
+        ready.countDown();
+      }
+    }));
+    assertTrue(ready.await(10, SECONDS));
+    try {
+      cache.open(url);
+      fail("Exception not thrown");
+    } catch (IOException e) {
+      // Expected
+    }
+    assertEquals(1, requests.get());
+  }
+
+  /**
+   * Partial downloads left by a previous process are deleted
+   *
+   * @throws Exception
+   */
+  @Test
+  public void staleTempDeleted() throws Exception {
+    File directory = folder.newFolder();
+    File stale = new File(directory, "stale.tmp");
+    assertTrue(stale.createNewFile());
+    DownloadCache cache = new DownloadCache(directory, 1024 * 1024);
+    assertEquals(0, cache.getSize());
+    assertFalse(stale.exists());
+  }
+
+  /**
+   * Least recently used downloads are deleted once over the maximum size
+   *
+   * @throws Exception
+   */
+  @Test
+  public void trim() throws Exception {
+    DownloadCache cache = new DownloadCache(folder.newFolder(),
+        body.length + 1);
+    read(cache.open(base + "/first.jpg"));
+    cache.get(base + "/first.jpg").setLastModified(
+        System.currentTimeMillis() - 60 * 1000);
+    read(cache.open(base + "/second.jpg"));
+    assertNull(cache.get(base + "/first.jpg"));
+    assertNotNull(cache.get(base + "/second.jpg"));
+    assertEquals(body.length, cache.getSize());
+  }
+}
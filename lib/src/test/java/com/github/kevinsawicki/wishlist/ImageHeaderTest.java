@@ -0,0 +1,166 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link ImageHeader}
+ */
+public class ImageHeaderTest {
+
+  private static boolean isOpaque(final byte[] header) throws IOException {
+    return ImageHeader.isOpaque(new ByteArrayInputStream(header));
+  }
+
+  private static byte[] png(final int colorType, final boolean transparency)
+      throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(bytes);
+    output.writeInt(0x89504E47);
+    output.writeInt(0x0D0A1A0A);
+    output.writeInt(13);
+    output.writeInt(0x49484452);
+    output.writeInt(16);
+    output.writeInt(16);
+    output.writeByte(8);
+    output.writeByte(colorType);
+    output.writeByte(0);
+    output.writeByte(0);
+    output.writeByte(0);
+    output.writeInt(0);
+    if (transparency) {
+      output.writeInt(2);
+      output.writeInt(0x74524E53);
+      output.writeShort(0);
+      output.writeInt(0);
+    }
+    output.writeInt(0);
+    output.writeInt(0x49444154);
+    output.writeInt(0);
+    return bytes.toByteArray();
+  }
+
+  private static void writeShort(final DataOutputStream output,
+      final int value, final boolean little) throws IOException {
+    output.writeShort(little ? Short.reverseBytes((short) value) : value);
+  }
+
+  private static void writeInt(final DataOutputStream output,
+      final int value, final boolean little) throws IOException {
+    output.writeInt(little ? Integer.reverseBytes(value) : value);
+  }
+
+  private static byte[] jpeg(final byte[] thumbnail, final boolean little)
+      throws IOException {
+    ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(tiff);
+    output.writeShort(little ? 0x4949 : 0x4D4D);
+    writeShort(output, 42, little);
+    // Empty IFD0 at offset 8 linking to IFD1 at offset 14
+    writeInt(output, 8, little);
+    writeShort(output, 0, little);
+    writeInt(output, 14, little);
+    writeShort(output, 2, little);
+    writeShort(output, 0x0201, little);
+    writeShort(output, 4, little);
+    writeInt(output, 1, little);
+    writeInt(output, 44, little);
+    writeShort(output, 0x0202, little);
+    writeShort(output, 4, little);
+    writeInt(output, 1, little);
+    writeInt(output, thumbnail.length, little);
+    writeInt(output, 0, little);
+    output.write(thumbnail);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    output = new DataOutputStream(bytes);
+    output.writeShort(0xFFD8);
+    output.writeShort(0xFFE0);
+    output.writeShort(4);
+    output.writeShort(0);
+    output.writeShort(0xFFE1);
+    output.writeShort(2 + 6 + tiff.size());
+    output.writeBytes("Exif");
+    output.writeShort(0);
+    output.write(tiff.toByteArray());
+    output.writeShort(0xFFDA);
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Verify JPEG images are opaque
+   *
+   * @throws IOException
+   */
+  @Test
+  public void jpeg() throws IOException {
+    assertTrue(isOpaque(new byte[] { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF,
+        (byte) 0xE0 }));
+  }
+
+  /**
+   * Verify PNG color types and transparency chunks
+   *
+   * @throws IOException
+   */
+  @Test
+  public void png() throws IOException {
+    assertTrue(isOpaque(png(2, false)));
+    assertFalse(isOpaque(png(6, false)));
+    assertFalse(isOpaque(png(4, false)));
+    assertFalse(isOpaque(png(2, true)));
+  }
+
+  /**
+   * Verify unknown and truncated headers are not opaque
+   *
+   * @throws IOException
+   */
+  @Test
+  public void unknown() throws IOException {
+    assertFalse(isOpaque(new byte[] { 'G', 'I', 'F', '8', '9', 'a' }));
+    assertFalse(isOpaque(new byte[] { (byte) 0x89, 'P' }));
+    assertFalse(isOpaque(new byte[0]));
+  }
+
+  /**
+   * Verify embedded thumbnail is read in both byte orders
+   *
+   * @throws IOException
+   */
+  @Test
+  public void exifThumbnail() throws IOException {
+    byte[] thumbnail = new byte[] { (byte) 0xFF, (byte) 0xD8, 1, 2, 3,
+        (byte) 0xFF, (byte) 0xD9 };
+    assertArrayEquals(thumbnail, ImageHeader
+        .getExifThumbnail(new ByteArrayInputStream(jpeg(thumbnail, false))));
+    assertArrayEquals(thumbnail, ImageHeader
+        .getExifThumbnail(new ByteArrayInputStream(jpeg(thumbnail, true))));
+    assertNull(ImageHeader.getExifThumbnail(new ByteArrayInputStream(png(2,
+        false))));
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Decoder of {@link BufferedImage} instances using {@link ImageIO} so that
+ * decoding can be run and measured on the JVM
+ * <p>
+ * Sources are read using {@link BitmapSource#open()}
+ */
+public class ImageIODecoder implements ImageDecoder<BufferedImage> {
+
+  private interface ReaderCallback<V> {
+
+    V run(ImageReader reader) throws IOException;
+  }
+
+  private static <V> V read(final BitmapSource source,
+      final DecodeOptions<BufferedImage> options,
+      final ReaderCallback<V> callback) {
+    InputStream stream = null;
+    ImageInputStream input = null;
+    ImageReader reader = null;
+    try {
+      stream = source.open();
+      input = ImageIO.createImageInputStream(stream);
+      if (input == null)
+        return null;
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+      if (!readers.hasNext())
+        return null;
+
+      reader = readers.next();
+      reader.setInput(input, true, true);
+      final ImageReader aborted = reader;
+      options.setCanceller(new Runnable() {
+
+        public void run() {
+          aborted.abort();
+        }
+      });
+      return callback.run(reader);
+    } catch (IOException e) {
+      return null;
+    } finally {
+      options.setCanceller(null);
+      if (reader != null)
+        reader.dispose();
+      try {
+        if (input != null)
+          input.close();
+        if (stream != null)
+          stream.close();
+      } catch (IOException ignored) {
+        // Ignored
+      }
+    }
+  }
+
+  public void decodeBounds(final BitmapSource source,
+      final DecodeOptions<BufferedImage> options) {
+    options.outWidth = -1;
+    options.outHeight = -1;
+    read(source, options, new ReaderCallback<Void>() {
+
+      public Void run(final ImageReader reader) throws IOException {
+        options.outWidth = reader.getWidth(0);
+        options.outHeight = reader.getHeight(0);
+        String[] types = reader.getOriginatingProvider().getMIMETypes();
+        options.outMimeType = types != null && types.length > 0 ? types[0]
+            : null;
+        return null;
+      }
+    });
+  }
+
+  public BufferedImage decode(final BitmapSource source,
+      final DecodeOptions<BufferedImage> options) {
+    BufferedImage image = read(source, options,
+        new ReaderCallback<BufferedImage>() {
+
+          public BufferedImage run(final ImageReader reader)
+              throws IOException {
+            ImageReadParam param = reader.getDefaultReadParam();
+            int sampleSize = Math.max(1, options.sampleSize);
+            param.setSourceSubsampling(sampleSize, sampleSize, 0, 0);
+            return reader.read(0, param);
+          }
+        });
+    if (image == null || options.isCancelled())
+      return null;
+    if (options.scaledWidth <= 0 || options.scaledWidth >= image.getWidth())
+      return image;
+
+    int width = options.scaledWidth;
+    int height = Math.max(1,
+        Math.round((float) image.getHeight() * width / image.getWidth()));
+    BufferedImage scaled = new BufferedImage(width, height,
+        options.preferRgb565 ? BufferedImage.TYPE_USHORT_565_RGB
+            : BufferedImage.TYPE_INT_ARGB);
+    Graphics2D graphics = scaled.createGraphics();
+    graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    graphics.drawImage(image, 0, 0, width, height, null);
+    graphics.dispose();
+    return scaled;
+  }
+}
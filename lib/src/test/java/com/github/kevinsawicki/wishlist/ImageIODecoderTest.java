@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests of {@link ImageIODecoder}
+ */
+public class ImageIODecoderTest {
+
+  /**
+   * Temporary folder for image files
+   */
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private BitmapSource image(final int width, final int height)
+      throws IOException {
+    File file = folder.newFile("image.png");
+    assertTrue(ImageIO.write(new BufferedImage(width, height,
+        BufferedImage.TYPE_INT_RGB), "png", file));
+    return BitmapSource.fromFile(file.getPath());
+  }
+
+  /**
+   * Bounds and mime type are decoded
+   *
+   * @throws IOException
+   */
+  @Test
+  public void decodeBounds() throws IOException {
+    DecodeOptions<BufferedImage> options = new DecodeOptions<BufferedImage>();
+    new ImageIODecoder().decodeBounds(image(300, 200), options);
+    assertEquals(300, options.outWidth);
+    assertEquals(200, options.outHeight);
+    assertEquals("image/png", options.outMimeType);
+  }
+
+  /**
+   * Sampled and scaled images match the sizes used by
+   * {@link DecodeBitmapTask}
+   *
+   * @throws IOException
+   */
+  @Test
+  public void sampleAndScale() throws IOException {
+    BitmapSource source = image(1000, 500);
+    ImageIODecoder decoder = new ImageIODecoder();
+    DecodeOptions<BufferedImage> options = new DecodeOptions<BufferedImage>();
+    decoder.decodeBounds(source, options);
+
+    options.sampleSize = SampleSize.getPowerOfTwo(1000, 500, 300, 300);
+    BufferedImage sampled = decoder.decode(source, options);
+    assertNotNull(sampled);
+    assertEquals(SampleSize.getSampled(1000, options.sampleSize),
+        sampled.getWidth());
+
+    options.scaledWidth = SampleSize.getTargetWidth(1000, 500, 300, 300);
+    BufferedImage scaled = decoder.decode(source, options);
+    assertNotNull(scaled);
+    assertEquals(300, scaled.getWidth());
+    assertEquals(150, scaled.getHeight());
+  }
+
+  /**
+   * Cancelled decodes return null
+   *
+   * @throws IOException
+   */
+  @Test
+  public void cancelled() throws IOException {
+    DecodeOptions<BufferedImage> options = new DecodeOptions<BufferedImage>();
+    options.requestCancel();
+    assertNull(new ImageIODecoder().decode(image(10, 10), options));
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link LatencyHistogram}
+ */
+public class LatencyHistogramTest {
+
+  /**
+   * Empty histogram reports zeros
+   */
+  @Test
+  public void empty() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMean());
+    assertEquals(0, histogram.getPercentile(50));
+  }
+
+  /**
+   * Percentiles are within a factor of two of recorded latencies
+   */
+  @Test
+  public void percentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 90; i++)
+      histogram.record(100 * 1000);
+    for (int i = 0; i < 10; i++)
+      histogram.record(10 * 1000 * 1000);
+    assertEquals(100, histogram.getCount());
+    assertEquals(1090, histogram.getMean());
+    assertEquals(10000, histogram.getMax());
+    long median = histogram.getPercentile(50);
+    assertTrue(median >= 100 && median < 200);
+    long p99 = histogram.getPercentile(99);
+    assertTrue(p99 > 5000 && p99 <= 10000);
+    assertEquals(10000, histogram.getPercentile(100));
+  }
+
+  /**
+   * Clearing removes recorded latencies
+   */
+  @Test
+  public void clear() {
+    LatencyHistogram histogram = new LatencyHistogram().record(5000);
+    assertEquals(1, histogram.getCount());
+    histogram.clear();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMax());
+  }
+}
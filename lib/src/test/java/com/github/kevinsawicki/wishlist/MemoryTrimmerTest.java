@@ -0,0 +1,68 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+import static com.github.kevinsawicki.wishlist.MemoryTrimmer.TRIM_MEMORY_RUNNING_LOW;
+import static org.junit.Assert.assertEquals;
+
+import com.github.kevinsawicki.wishlist.MemoryTrimmer.Trimmable;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link MemoryTrimmer}
+ */
+public class MemoryTrimmerTest {
+
+  private static class Recorder implements Trimmable {
+
+    private float fraction = -1;
+
+    public void trimToFraction(final float fraction) {
+      this.fraction = fraction;
+    }
+  }
+
+  /**
+   * Levels between configured levels use the fraction of the level below
+   */
+  @Test
+  public void levelBetweenTiers() {
+    Recorder recorder = new Recorder();
+    MemoryTrimmer trimmer = new MemoryTrimmer().add(recorder);
+    trimmer.onTrimMemory(TRIM_MEMORY_RUNNING_LOW + 1);
+    assertEquals(0.5F, recorder.fraction, 0);
+    trimmer.onTrimMemory(1);
+    assertEquals(0.5F, recorder.fraction, 0);
+    trimmer.onLowMemory();
+    assertEquals(0F, recorder.fraction, 0);
+  }
+
+  /**
+   * Configured fraction is used for its level only
+   */
+  @Test
+  public void setTarget() {
+    Recorder first = new Recorder();
+    Recorder second = new Recorder();
+    MemoryTrimmer trimmer = new MemoryTrimmer().add(first).add(second);
+    trimmer.setTarget(first, TRIM_MEMORY_UI_HIDDEN, 0.1F);
+    trimmer.onTrimMemory(TRIM_MEMORY_UI_HIDDEN);
+    assertEquals(0.1F, first.fraction, 0);
+    assertEquals(0.5F, second.fraction, 0);
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static com.github.kevinsawicki.wishlist.DecodeMetrics.CACHE_MEMORY;
+import static com.github.kevinsawicki.wishlist.DecodeMetrics.CACHE_POOL;
+import static com.github.kevinsawicki.wishlist.DecodeMetrics.STAGE_DECODE;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link MetricsRecorder}
+ */
+public class MetricsRecorderTest {
+
+  /**
+   * Hit rates are tracked for each cache
+   */
+  @Test
+  public void hitRate() {
+    MetricsRecorder recorder = new MetricsRecorder();
+    assertEquals(0F, recorder.getHitRate(CACHE_MEMORY), 0);
+    recorder.onLookup(CACHE_MEMORY, true);
+    recorder.onLookup(CACHE_MEMORY, true);
+    recorder.onLookup(CACHE_MEMORY, true);
+    recorder.onLookup(CACHE_MEMORY, false);
+    recorder.onLookup(CACHE_POOL, false);
+    assertEquals(0.75F, recorder.getHitRate(CACHE_MEMORY), 0);
+    assertEquals(0F, recorder.getHitRate(CACHE_POOL), 0);
+  }
+
+  /**
+   * Decoded images are counted by sample size
+   */
+  @Test
+  public void decoded() {
+    MetricsRecorder recorder = new MetricsRecorder();
+    recorder.onDecoded("a", 4, 1000, 4096);
+    recorder.onDecoded("b", 4, -1, 4096);
+    recorder.onDecoded("c", 1, 500, 1024);
+    recorder.onCancelled("d");
+    assertEquals(3, recorder.getDecodedCount());
+    assertEquals(2, recorder.getSampleSizeCount(4));
+    assertEquals(1, recorder.getSampleSizeCount(1));
+    assertEquals(0, recorder.getSampleSizeCount(2));
+    assertEquals(1500, recorder.getBytesRead());
+    assertEquals(9216, recorder.getDecodedByteCount());
+    assertEquals(1, recorder.getCancelledCount());
+  }
+
+  /**
+   * Stage latencies are recorded in the histogram of the stage
+   */
+  @Test
+  public void stages() {
+    MetricsRecorder recorder = new MetricsRecorder();
+    recorder.onStage(STAGE_DECODE, 2000 * 1000);
+    assertEquals(1, recorder.getStage(STAGE_DECODE).getCount());
+    assertEquals(2000, recorder.getStage(STAGE_DECODE).getMean());
+    recorder.clear();
+    assertEquals(0, recorder.getStage(STAGE_DECODE).getCount());
+  }
+}
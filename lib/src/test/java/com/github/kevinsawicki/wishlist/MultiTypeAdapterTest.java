@@ -0,0 +1,185 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static org.junit.Assert.assertEquals;
+import android.app.Activity;
+
+import com.xtremelabs.robolectric.RobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit tests of batched changes to {@link MultiTypeAdapter}
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MultiTypeAdapterTest {
+
+  private static class CountingAdapter extends MultiTypeAdapter {
+
+    private int notified;
+
+    private int changed;
+
+    private CountingAdapter() {
+      super(new Activity());
+    }
+
+    @Override
+    protected int getChildLayoutId(final int type) {
+      return 0;
+    }
+
+    @Override
+    protected int[] getChildViewIds(final int type) {
+      return new int[0];
+    }
+
+    @Override
+    protected void update(final int position, final Object item,
+        final int type) {
+      // Views are not updated by these tests
+    }
+
+    @Override
+    protected void onItemsChanged() {
+      changed++;
+    }
+
+    @Override
+    public void notifyDataSetChanged() {
+      notified++;
+    }
+  }
+
+  private CountingAdapter adapter;
+
+  /**
+   * Create adapter
+   */
+  @Before
+  public void setup() {
+    adapter = new CountingAdapter();
+  }
+
+  /**
+   * Changes outside a batch notify observers each time
+   */
+  @Test
+  public void unbatchedChanges() {
+    adapter.addItem(0, "a");
+    adapter.addItem(0, "b");
+    assertEquals(2, adapter.notified);
+    assertEquals(2, adapter.changed);
+  }
+
+  /**
+   * Changes in a batch notify observers once when committed
+   */
+  @Test
+  public void batchNotifiesOnce() {
+    adapter.beginBatch();
+    adapter.addItem(0, "a");
+    adapter.addItems(0, new Object[] { "b", "c" });
+    adapter.removeItem(1);
+    assertEquals(0, adapter.notified);
+    adapter.commitBatch();
+    assertEquals(1, adapter.notified);
+    assertEquals(1, adapter.changed);
+    assertEquals(2, adapter.getCount());
+  }
+
+  /**
+   * Batches without changes do not notify observers
+   */
+  @Test
+  public void emptyBatch() {
+    adapter.beginBatch().commitBatch();
+    assertEquals(0, adapter.notified);
+  }
+
+  /**
+   * Nested batches notify observers when the outermost batch is committed
+   */
+  @Test
+  public void nestedBatches() {
+    adapter.beginBatch();
+    adapter.addItem(0, "a");
+    adapter.beginBatch();
+    adapter.addItem(0, "b");
+    adapter.commitBatch();
+    assertEquals(0, adapter.notified);
+    adapter.commitBatch();
+    assertEquals(1, adapter.notified);
+    assertEquals(1, adapter.changed);
+  }
+
+  /**
+   * Batches committed in a finally block notify observers after an exception
+   */
+  @Test
+  public void exceptionInBatch() {
+    try {
+      adapter.beginBatch();
+      try {
+        adapter.addItem(0, "a");
+        throw new IllegalArgumentException();
+      } finally {
+        adapter.commitBatch();
+      }
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+    assertEquals(1, adapter.notified);
+    adapter.addItem(0, "b");
+    assertEquals(2, adapter.notified);
+  }
+
+  /**
+   * Committing without beginning a batch throws an exception
+   */
+  @Test(expected = IllegalStateException.class)
+  public void commitWithoutBatch() {
+    adapter.commitBatch();
+  }
+
+  /**
+   * Item at the first position can be removed
+   */
+  @Test
+  public void removeFirstItem() {
+    adapter.addItem(0, "a");
+    adapter.addItem(0, "b");
+    adapter.removeItem(0);
+    assertEquals(1, adapter.getCount());
+    assertEquals("b", adapter.getItem(0));
+    assertEquals(3, adapter.notified);
+  }
+
+  /**
+   * Positions outside the items are ignored
+   */
+  @Test
+  public void removeInvalidPosition() {
+    adapter.addItem(0, "a");
+    adapter.removeItem(-1);
+    adapter.removeItem(1);
+    assertEquals(1, adapter.getCount());
+    assertEquals(1, adapter.notified);
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static org.junit.Assert.assertEquals;
+
+import com.github.kevinsawicki.wishlist.DimensionIndex.Dimensions;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link Palette}
+ */
+public class PaletteTest {
+
+  private static int[] fill(final int... colorsAndCounts) {
+    int length = 0;
+    for (int i = 1; i < colorsAndCounts.length; i += 2)
+      length += colorsAndCounts[i];
+    int[] pixels = new int[length];
+    int offset = 0;
+    for (int i = 0; i < colorsAndCounts.length; i += 2)
+      for (int j = 0; j < colorsAndCounts[i + 1]; j++)
+        pixels[offset++] = colorsAndCounts[i];
+    return pixels;
+  }
+
+  /**
+   * Colors are returned most frequent first
+   */
+  @Test
+  public void mostFrequentFirst() {
+    int[] pixels = fill(0xFF0000FF, 10, 0xFFFF0000, 30, 0xFF00FF00, 20);
+    int[] colors = Palette.getDominant(pixels, pixels.length, 3);
+    assertEquals(3, colors.length);
+    assertEquals(0xFFFF0000, colors[0]);
+    assertEquals(0xFF00FF00, colors[1]);
+    assertEquals(0xFF0000FF, colors[2]);
+  }
+
+  /**
+   * Colors are the average of the pixels in a bucket
+   */
+  @Test
+  public void averageOfBucket() {
+    int[] pixels = fill(0xFF808080, 1, 0xFF828486, 1);
+    int[] colors = Palette.getDominant(pixels, pixels.length, 1);
+    assertEquals(1, colors.length);
+    assertEquals(0xFF818283, colors[0]);
+  }
+
+  /**
+   * Colors close to a more dominant color are skipped
+   */
+  @Test
+  public void similarColorsSkipped() {
+    int[] pixels = fill(0xFF808080, 30, 0xFF909090, 20, 0xFF000000, 10);
+    int[] colors = Palette.getDominant(pixels, pixels.length, 3);
+    assertEquals(2, colors.length);
+    assertEquals(0xFF808080, colors[0]);
+    assertEquals(0xFF000000, colors[1]);
+  }
+
+  /**
+   * Transparent pixels are ignored
+   */
+  @Test
+  public void transparentIgnored() {
+    int[] pixels = fill(0x00FFFFFF, 50, 0x40FF0000, 50, 0xFF00FF00, 1);
+    int[] colors = Palette.getDominant(pixels, pixels.length, 2);
+    assertEquals(1, colors.length);
+    assertEquals(0xFF00FF00, colors[0]);
+    assertEquals(0, Palette.getDominant(pixels, 100, 2).length);
+  }
+
+  /**
+   * Placeholder is the most dominant indexed color
+   */
+  @Test
+  public void placeholder() {
+    DimensionIndex index = new DimensionIndex(10);
+    assertEquals(7, Palette.getPlaceholder(index, "a", 7));
+    index.put("a", new Dimensions(1, 1, 0));
+    assertEquals(7, Palette.getPlaceholder(index, "a", 7));
+    index.put("a", new Dimensions(1, 1, 0, new int[] { 0xFF123456 }));
+    assertEquals(0xFF123456, Palette.getPlaceholder(index, "a", 7));
+    assertEquals(7, Palette.getPlaceholder(null, "a", 7));
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link SampleSize}
+ */
+public class SampleSizeTest {
+
+  /**
+   * Rounded sample size can decode images larger than the maximum size
+   */
+  @Test
+  public void roundedExceedsMaximum() {
+    int scale = SampleSize.getRounded(3264, 2448, 1000, 1000);
+    assertEquals(3, scale);
+    assertTrue(SampleSize.getSampled(3264, scale) > 1000);
+  }
+
+  /**
+   * Power of two sample size never decodes below the target size
+   */
+  @Test
+  public void powerOfTwoStaysAboveTarget() {
+    assertEquals(2, SampleSize.getPowerOfTwo(3264, 2448, 1000, 1000));
+    assertEquals(1000, SampleSize.getTargetWidth(3264, 2448, 1000, 1000));
+    assertEquals(750, SampleSize.getTargetHeight(3264, 2448, 1000, 1000));
+    assertEquals(32, SampleSize.getPowerOfTwo(3264, 2448, 96, 96));
+  }
+
+  /**
+   * Images smaller than the maximum size are not sampled or scaled
+   */
+  @Test
+  public void smallerThanMaximum() {
+    assertEquals(1, SampleSize.getRounded(100, 50, 200, 200));
+    assertEquals(1, SampleSize.getPowerOfTwo(100, 50, 200, 200));
+    assertEquals(100, SampleSize.getTargetWidth(100, 50, 200, 200));
+    assertEquals(50, SampleSize.getTargetHeight(100, 50, 200, 200));
+  }
+}
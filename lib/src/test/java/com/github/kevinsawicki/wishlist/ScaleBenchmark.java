@@ -0,0 +1,144 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+/**
+ * Benchmark of scaling pixels down to an exact size with {@link BoxScaler}
+ * compared to allocating a new image and drawing it with bilinear filtering,
+ * which is what {@link android.graphics.Bitmap#createScaledBitmap} does
+ * <p>
+ * Usage: ScaleBenchmark [source size] [target size] [iterations]
+ */
+public class ScaleBenchmark {
+
+  private interface Scaler {
+
+    int scale(BufferedImage image, int[] pixels, int size);
+  }
+
+  private static final Scaler BOX = new Scaler() {
+
+    private int[] scaled = new int[0];
+
+    public int scale(final BufferedImage image, final int[] pixels,
+        final int size) {
+      if (scaled.length < size * size)
+        scaled = new int[size * size];
+      BoxScaler.scale(pixels, image.getWidth(), image.getHeight(), scaled,
+          size, size);
+      return scaled[0];
+    }
+
+    @Override
+    public String toString() {
+      return "box";
+    }
+  };
+
+  private static final Scaler BILINEAR = new Scaler() {
+
+    public int scale(final BufferedImage image, final int[] pixels,
+        final int size) {
+      BufferedImage scaled = new BufferedImage(size, size,
+          BufferedImage.TYPE_INT_ARGB);
+      Graphics2D graphics = scaled.createGraphics();
+      graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+          RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      graphics.drawImage(image, 0, 0, size, size, null);
+      graphics.dispose();
+      return scaled.getRGB(0, 0);
+    }
+
+    @Override
+    public String toString() {
+      return "bilinear";
+    }
+  };
+
+  /**
+   * Get bytes allocated by the current thread
+   *
+   * @return bytes or -1 if not supported by the JVM
+   */
+  private static long getAllocated() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (!(threads instanceof com.sun.management.ThreadMXBean))
+      return -1;
+    return ((com.sun.management.ThreadMXBean) threads)
+        .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /**
+   * Run scaler the given number of iterations
+   *
+   * @return elapsed nanoseconds and bytes allocated, -1 if not measured
+   */
+  private static long[] run(final Scaler scaler, final BufferedImage image,
+      final int[] pixels, final int size, final int iterations) {
+    int checksum = 0;
+    long allocated = getAllocated();
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++)
+      checksum += scaler.scale(image, pixels, size);
+    long elapsed = System.nanoTime() - start;
+    if (allocated != -1)
+      allocated = getAllocated() - allocated;
+    if (checksum == 1)
+      System.out.print("");
+    return new long[] { elapsed, allocated };
+  }
+
+  /**
+   * Run benchmark
+   *
+   * @param args
+   */
+  public static void main(final String[] args) {
+    int sourceSize = args.length > 0 ? Integer.parseInt(args[0]) : 384;
+    int size = args.length > 1 ? Integer.parseInt(args[1]) : 96;
+    int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+
+    BufferedImage image = new BufferedImage(sourceSize, sourceSize,
+        BufferedImage.TYPE_INT_ARGB);
+    int[] pixels = new int[sourceSize * sourceSize];
+    Random random = new Random(1);
+    for (int i = 0; i < pixels.length; i++)
+      pixels[i] = 0xFF000000 | random.nextInt(0xFFFFFF);
+    image.setRGB(0, 0, sourceSize, sourceSize, pixels, 0, sourceSize);
+
+    Scaler[] scalers = new Scaler[] { BOX, BILINEAR };
+    // Warm up
+    for (Scaler scaler : scalers)
+      run(scaler, image, pixels, size, iterations);
+
+    System.out.println("scaler\tms\tus/scale\tbytes allocated/scale");
+    for (Scaler scaler : scalers) {
+      long[] result = run(scaler, image, pixels, size, iterations);
+      long elapsed = result[0];
+      long allocated = result[1];
+      System.out.println(scaler + "\t" + elapsed / 1000000 + "\t"
+          + elapsed / 1000 / iterations + "\t"
+          + (allocated != -1 ? Long.toString(allocated / iterations) : "n/a"));
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static org.junit.Assert.assertEquals;
+import android.graphics.Bitmap;
+
+import com.github.kevinsawicki.wishlist.ThumbnailBatch.Listener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link ThumbnailBatch}
+ */
+public class ThumbnailBatchTest {
+
+  private static class RecordingListener implements Listener {
+
+    private final List<Integer> progress = Collections
+        .synchronizedList(new ArrayList<Integer>());
+
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private volatile int total;
+
+    public void onThumbnail(final int index, final BitmapSource source,
+        final Bitmap bitmap) {
+      // Bitmaps are never loaded by these tests
+    }
+
+    public void onFailure(final int index, final BitmapSource source,
+        final Throwable error) {
+      failures.incrementAndGet();
+    }
+
+    public void onProgress(final int completed, final int total) {
+      progress.add(completed);
+      this.total = total;
+    }
+  }
+
+  private static List<BitmapSource> sources(final int count) {
+    List<BitmapSource> sources = new ArrayList<BitmapSource>();
+    for (int i = 0; i < count; i++)
+      sources.add(BitmapSource.fromFile("/missing/" + i + ".jpg"));
+    return sources;
+  }
+
+  /**
+   * Progress is reported once for every image before the batch returns
+   *
+   * @throws InterruptedException
+   */
+  @Test
+  public void progress() throws InterruptedException {
+    RecordingListener listener = new RecordingListener();
+    final AtomicInteger loaded = new AtomicInteger();
+    ThumbnailBatch batch = new ThumbnailBatch(10, 10, sources(25)) {
+
+      @Override
+      protected Bitmap load(final int index, final BitmapSource source) {
+        loaded.incrementAndGet();
+        return null;
+      }
+    }.setParallelism(3).setListener(listener);
+
+    assertEquals(0, batch.run());
+    assertEquals(25, loaded.get());
+    assertEquals(25, listener.failures.get());
+    assertEquals(25, listener.progress.size());
+    assertEquals(25, listener.total);
+    List<Integer> sorted = new ArrayList<Integer>(listener.progress);
+    Collections.sort(sorted);
+    for (int i = 0; i < sorted.size(); i++)
+      assertEquals(i + 1, sorted.get(i).intValue());
+  }
+
+  /**
+   * Images are not started once the batch is cancelled and cancelled images
+   * are not reported as failures
+   *
+   * @throws InterruptedException
+   */
+  @Test
+  public void cancel() throws InterruptedException {
+    RecordingListener listener = new RecordingListener();
+    final AtomicInteger loaded = new AtomicInteger();
+    final ThumbnailBatch[] batch = new ThumbnailBatch[1];
+    batch[0] = new ThumbnailBatch(10, 10, sources(25)) {
+
+      @Override
+      protected Bitmap load(final int index, final BitmapSource source) {
+        if (loaded.incrementAndGet() == 3)
+          batch[0].cancel();
+        return null;
+      }
+    }.setParallelism(1).setListener(listener);
+
+    assertEquals(0, batch[0].run());
+    assertEquals(3, loaded.get());
+    assertEquals(2, listener.failures.get());
+    assertEquals(3, listener.progress.size());
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.github.kevinsawicki.wishlist.TileDecoder.TileQueue;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link TileDecoder}
+ */
+public class TileDecoderTest {
+
+  /**
+   * Sample size is the largest power of two that keeps the displayed scale
+   */
+  @Test
+  public void sampleSize() {
+    assertEquals(1, TileDecoder.getSampleSize(2F));
+    assertEquals(1, TileDecoder.getSampleSize(1F));
+    assertEquals(1, TileDecoder.getSampleSize(0.6F));
+    assertEquals(2, TileDecoder.getSampleSize(0.5F));
+    assertEquals(2, TileDecoder.getSampleSize(0.3F));
+    assertEquals(4, TileDecoder.getSampleSize(0.25F));
+    assertEquals(8, TileDecoder.getSampleSize(0.1F));
+  }
+
+  /**
+   * Viewports map to the tiles they intersect, clamped to the image
+   */
+  @Test
+  public void tileBounds() {
+    assertArrayEquals(new int[] { 0, 0, 0, 0 },
+        TileDecoder.getTileBounds(0, 0, 100, 100, 1000, 800, 256));
+    assertArrayEquals(new int[] { 0, 0, 0, 0 },
+        TileDecoder.getTileBounds(0, 0, 256, 256, 1000, 800, 256));
+    assertArrayEquals(new int[] { 0, 0, 2, 2 },
+        TileDecoder.getTileBounds(250, 250, 600, 520, 1000, 800, 256));
+    assertArrayEquals(new int[] { 1, 1, 3, 3 },
+        TileDecoder.getTileBounds(300, 300, 5000, 5000, 1000, 800, 256));
+    assertArrayEquals(new int[] { 0, 0, 1, 1 },
+        TileDecoder.getTileBounds(0, 0, 1000, 800, 1000, 800, 512));
+  }
+
+  /**
+   * Tiles that scroll out before decoding are never decoded and tiles that
+   * are decoding are not queued again
+   */
+  @Test
+  public void scrollOut() {
+    TileQueue<String> queue = new TileQueue<String>();
+    assertTrue(queue.add("a", "a"));
+    assertTrue(queue.add("b", "b"));
+    assertTrue(queue.add("c", "c"));
+    assertEquals("a", queue.poll());
+
+    queue.clear();
+    assertTrue(queue.add("c", "c"));
+    assertFalse(queue.add("a", "a"));
+    assertEquals("c", queue.poll());
+    assertNull(queue.poll());
+    assertTrue(queue.isEmpty());
+
+    queue.done("a");
+    assertTrue(queue.deliver("a"));
+    assertFalse(queue.deliver("a"));
+    assertFalse(queue.deliver("b"));
+  }
+
+  /**
+   * Tiles that scroll out while decoding are not delivered
+   */
+  @Test
+  public void scrollOutWhileDecoding() {
+    TileQueue<String> queue = new TileQueue<String>();
+    queue.add("a", "a");
+    assertEquals("a", queue.poll());
+
+    queue.clear();
+    queue.add("b", "b");
+    queue.done("a");
+    assertFalse(queue.deliver("a"));
+
+    queue.clear();
+    assertTrue(queue.add("a", "a"));
+    assertEquals("a", queue.poll());
+  }
+}
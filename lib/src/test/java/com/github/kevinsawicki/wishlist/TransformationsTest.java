@@ -0,0 +1,86 @@
+/*
+ * Copyright 2012 Kevin Sawicki <kevinsawicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.kevinsawicki.wishlist;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of the pixel operations of {@link Transformations}
+ */
+public class TransformationsTest {
+
+  /**
+   * Solid colors are unchanged by blurring
+   */
+  @Test
+  public void blurSolid() {
+    int[] pixels = new int[17 * 9];
+    for (int i = 0; i < pixels.length; i++)
+      pixels[i] = 0xFF336699;
+    Transformations.blur(pixels, 17, 9, 3);
+    for (int pixel : pixels)
+      assertEquals(0xFF336699, pixel);
+  }
+
+  /**
+   * A single bright pixel spreads evenly in every direction
+   */
+  @Test
+  public void blurSpreads() {
+    int size = 15;
+    int[] pixels = new int[size * size];
+    for (int i = 0; i < pixels.length; i++)
+      pixels[i] = 0xFF000000;
+    int center = size / 2 * size + size / 2;
+    pixels[center] = 0xFFFFFFFF;
+    Transformations.blur(pixels, size, size, 2);
+
+    int peak = pixels[center] & 0xFF;
+    assertTrue(peak > 0 && peak < 0xFF);
+    assertEquals(pixels[center - 1], pixels[center + 1]);
+    assertEquals(pixels[center - size], pixels[center + size]);
+    // Rows and columns are rounded separately
+    assertEquals(pixels[center - 1] & 0xFF, pixels[center - size] & 0xFF, 1);
+    assertTrue((pixels[center + 2] & 0xFF) < peak);
+    assertEquals(0xFF000000, pixels[0]);
+  }
+
+  /**
+   * Colors of transparent pixels do not bleed into opaque pixels
+   */
+  @Test
+  public void blurPremultiplied() {
+    int[] pixels = new int[] { 0xFFFF0000, 0x0000FF00, 0x0000FF00 };
+    Transformations.blur(pixels, 3, 1, 1);
+    for (int pixel : pixels)
+      assertEquals(0xFF0000, pixel & 0xFFFFFF);
+  }
+
+  /**
+   * Radius below 1 leaves the pixels unchanged
+   */
+  @Test
+  public void blurNoRadius() {
+    int[] pixels = new int[] { 0xFF000000, 0x80FFFFFF, 0x00000000 };
+    int[] blurred = pixels.clone();
+    Transformations.blur(blurred, 3, 1, 0);
+    assertArrayEquals(pixels, blurred);
+  }
+}